@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reducing one magnitude spectrum to band levels: the precomputed sparse mapper against one
+ * {@code getVolumeInBand} scan per band. Up to 20 bands use the built-in layout, more a generated
+ * mel layout, where the mapper's cost follows its non-zero weights rather than the band count.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BandMappingBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+
+    @Param({"1", "5", "10", "20", "64", "256"})
+    public int bands;
+
+    @Param({"1024", "4096", "16384"})
+    public int fftSize;
+
+    private double[] bandFreqLow;
+    private double[] bandFreqHigh;
+    private Object mapper;
+    private double[] magnitudes;
+    private double[] volumes;
+
+    @Setup
+    public void setUp() {
+        double[][] layout = Bridge.bandLayout(bands);
+        bandFreqLow = layout[0];
+        bandFreqHigh = layout[1];
+        mapper = Bridge.newBandMapper(SAMPLE_RATE, fftSize, bandFreqLow, bandFreqHigh);
+        magnitudes = new double[fftSize / 2];
+        Bridge.magnitudes(Bridge.newFFT(fftSize), Signals.mix(fftSize, SAMPLE_RATE), fftSize,
+                magnitudes);
+        volumes = new double[bands];
+    }
+
+    @Benchmark
+    public double[] bandMapper() {
+        Bridge.mapBands(mapper, magnitudes, volumes);
+        return volumes;
+    }
+
+    @Benchmark
+    public double[] volumeInBand() {
+        for (int i = 0; i < bands; i++) {
+            volumes[i] = Bridge.volumeInBand(magnitudes, SAMPLE_RATE, bandFreqLow[i],
+                    bandFreqHigh[i]);
+        }
+        return volumes;
+    }
+}
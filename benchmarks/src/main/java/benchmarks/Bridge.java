@@ -0,0 +1,285 @@
+package benchmarks;
+
+import javax.sound.sampled.AudioFormat;
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Access to the visualizer classes, which live in the unnamed package and therefore cannot be
+ * imported from a named one (JMH refuses benchmarks in the unnamed package). Each entry point is
+ * a {@code static final} method handle, which the JIT treats as a constant and inlines, so the
+ * indirection does not show up in the measurements.
+ */
+final class Bridge {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final MethodHandle NEW_FFT =
+            constructor("FFT", MethodType.methodType(void.class, int.class));
+    private static final MethodHandle FFT_MAGNITUDES = virtual("FFT", "magnitudes",
+            MethodType.methodType(void.class, double[].class, int.class, double[].class));
+    private static final MethodHandle COMPUTE_FFT = statik("FFT", "computeFFT",
+            MethodType.methodType(double[].class, double[].class));
+
+    private static final MethodHandle NEW_DECODER =
+            constructor("PcmDecoder", MethodType.methodType(void.class, AudioFormat.class));
+    private static final MethodHandle DECODE = virtual("PcmDecoder", "decode",
+            MethodType.methodType(int.class, byte[].class, int.class, int.class, double[].class));
+    private static final MethodHandle BYTES_TO_SAMPLES = statik("AudioUtils", "bytesToSamples",
+            MethodType.methodType(double[].class, byte[].class, int.class, AudioFormat.class));
+
+    private static final MethodHandle NEW_BAND_MAPPER = constructor("BandMapper",
+            MethodType.methodType(void.class, float.class, int.class, double[].class,
+                    double[].class));
+    private static final MethodHandle MAP_BANDS = virtual("BandMapper", "map",
+            MethodType.methodType(void.class, double[].class, double[].class));
+    private static final MethodHandle VOLUME_IN_BAND = statik("AudioUtils", "getVolumeInBand",
+            MethodType.methodType(double.class, double[].class, float.class, double.class,
+                    double.class));
+    private static final MethodHandle BAND_FREQ_LOW = statik("Constants", "bandFreqLow",
+            MethodType.methodType(double[].class, int.class));
+    private static final MethodHandle BAND_FREQ_HIGH = statik("Constants", "bandFreqHigh",
+            MethodType.methodType(double[].class, int.class));
+    // Bands in the built-in layout (Constants.MAX_BANDS)
+    private static final int MAX_BANDS = 20;
+
+    private static final MethodHandle BUTTERFLIES = virtual("SpectralKernels", "butterflies",
+            MethodType.methodType(void.class, double[].class, double[].class, int.class,
+                    double[].class, double[].class));
+    private static final MethodHandle SPLIT_MAGNITUDES = virtual("SpectralKernels",
+            "splitMagnitudes", MethodType.methodType(void.class, double[].class, double[].class,
+                    int.class, double[].class, double[].class, double[].class));
+    private static final MethodHandle SUM_OF_SQUARES = virtual("SpectralKernels", "sumOfSquares",
+            MethodType.methodType(double.class, double[].class, int.class, int.class));
+    private static final MethodHandle DECODE_INT16_LE = virtual("SpectralKernels",
+            "decodeInt16LE", MethodType.methodType(void.class, byte[].class, int.class, int.class,
+                    double[].class, int.class));
+
+    private static final MethodHandle GENERATE_FRACTAL = statik("FractalGenerator",
+            "generateFractalImage",
+            MethodType.methodType(BufferedImage.class, int.class, int.class, int.class, int.class));
+    private static final MethodHandle NEW_RASTERIZER =
+            constructor("CarpetRasterizer", MethodType.methodType(void.class));
+    private static final MethodHandle RENDER_INTO = virtual("CarpetRasterizer", "renderInto",
+            MethodType.methodType(void.class, int.class, int.class, BufferedImage.class));
+
+    private Bridge() {
+    }
+
+    static Object newFFT(int size) {
+        try {
+            return (Object) NEW_FFT.invokeExact(size);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void magnitudes(Object fft, double[] samples, int count, double[] out) {
+        try {
+            FFT_MAGNITUDES.invokeExact(fft, samples, count, out);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static double[] computeFFT(double[] samples) {
+        try {
+            return (double[]) COMPUTE_FFT.invokeExact(samples);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newDecoder(AudioFormat format) {
+        try {
+            return (Object) NEW_DECODER.invokeExact(format);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static int decode(Object decoder, byte[] buffer, int offset, int length, double[] out) {
+        try {
+            return (int) DECODE.invokeExact(decoder, buffer, offset, length, out);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static double[] bytesToSamples(byte[] buffer, int length, AudioFormat format) {
+        try {
+            return (double[]) BYTES_TO_SAMPLES.invokeExact(buffer, length, format);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newBandMapper(float sampleRate, int fftSize, double[] low, double[] high) {
+        try {
+            return (Object) NEW_BAND_MAPPER.invokeExact(sampleRate, fftSize, low, high);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void mapBands(Object mapper, double[] magnitudes, double[] out) {
+        try {
+            MAP_BANDS.invokeExact(mapper, magnitudes, out);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static double volumeInBand(double[] magnitudes, float sampleRate, double low, double high) {
+        try {
+            return (double) VOLUME_IN_BAND.invokeExact(magnitudes, sampleRate, low, high);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Low and high edges of the first {@code numBands} bands of the built-in layout, or of
+     * {@code numBands} mel-spaced bands when the built-in layout has fewer.
+     */
+    static double[][] bandLayout(int numBands) {
+        try {
+            if (numBands > MAX_BANDS) {
+                return generatedLayout("MEL", numBands);
+            }
+            return new double[][]{(double[]) BAND_FREQ_LOW.invokeExact(numBands),
+                    (double[]) BAND_FREQ_HIGH.invokeExact(numBands)};
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * Low and high edges of {@code numBands} bands of a generated layout, by scale name, e.g.
+     * {@code "MEL"}. Only used during setup, so plain reflection will do.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static double[][] generatedLayout(String scale, int numBands) {
+        try {
+            Class<?> layoutClass = Class.forName("BandLayout");
+            Class<? extends Enum> scaleClass =
+                    (Class<? extends Enum>) Class.forName("BandLayout$Scale");
+            Object layout = layoutClass.getMethod("of", scaleClass, int.class)
+                    .invoke(null, Enum.valueOf(scaleClass, scale), numBands);
+            return new double[][]{(double[]) layoutClass.getMethod("getBandFreqLow").invoke(layout),
+                    (double[]) layoutClass.getMethod("getBandFreqHigh").invoke(layout)};
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A {@code SpectralKernels} implementation by class name, e.g. {@code "VectorSpectralKernels"}.
+     */
+    static Object newKernels(String className) {
+        try {
+            return constructor(className, MethodType.methodType(void.class)).invoke();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void butterflies(Object kernels, double[] re, double[] im, int n, double[] cos,
+                            double[] sin) {
+        try {
+            BUTTERFLIES.invokeExact(kernels, re, im, n, cos, sin);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void splitMagnitudes(Object kernels, double[] re, double[] im, int half, double[] cos,
+                                double[] sin, double[] out) {
+        try {
+            SPLIT_MAGNITUDES.invokeExact(kernels, re, im, half, cos, sin, out);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static double sumOfSquares(Object kernels, double[] values, int from, int to) {
+        try {
+            return (double) SUM_OF_SQUARES.invokeExact(kernels, values, from, to);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void decodeInt16LE(Object kernels, byte[] buffer, int offset, int count,
+                              double[] out) {
+        try {
+            DECODE_INT16_LE.invokeExact(kernels, buffer, offset, count, out, 0);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static BufferedImage generateFractalImage(int depth, int width, int height, int band) {
+        try {
+            return (BufferedImage) GENERATE_FRACTAL.invokeExact(depth, width, height, band);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static Object newRasterizer() {
+        try {
+            return (Object) NEW_RASTERIZER.invokeExact();
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    static void renderInto(Object rasterizer, int depth, int band, BufferedImage target) {
+        try {
+            RENDER_INTO.invokeExact(rasterizer, depth, band, target);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    private static MethodHandle constructor(String className, MethodType type) {
+        try {
+            Class<?> owner = Class.forName(className);
+            MethodHandle handle = LOOKUP.findConstructor(owner, type);
+            return handle.asType(handle.type().changeReturnType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(String className, String name, MethodType type) {
+        try {
+            Class<?> owner = Class.forName(className);
+            MethodHandle handle = LOOKUP.findVirtual(owner, name, type);
+            return handle.asType(handle.type().changeParameterType(0, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle statik(String className, String name, MethodType type) {
+        try {
+            return LOOKUP.findStatic(Class.forName(className), name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
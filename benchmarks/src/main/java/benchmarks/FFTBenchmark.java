@@ -0,0 +1,42 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Magnitude spectrum of one analysis buffer: the reusable plan against the allocating wrapper.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FFTBenchmark {
+
+    @Param({"256", "1024", "4096", "16384"})
+    public int size;
+
+    private Object plan;
+    private double[] samples;
+    private double[] magnitudes;
+
+    @Setup
+    public void setUp() {
+        plan = Bridge.newFFT(size);
+        samples = Signals.mix(size, 44100);
+        magnitudes = new double[size / 2];
+    }
+
+    @Benchmark
+    public double[] plan() {
+        Bridge.magnitudes(plan, samples, size, magnitudes);
+        return magnitudes;
+    }
+
+    @Benchmark
+    public double[] computeFFT() {
+        return Bridge.computeFFT(samples);
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering one band tile: the recursive Java2D renderer against the raster renderer drawing
+ * into a reused image.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FractalRenderBenchmark {
+
+    @Param({"0", "2", "4", "6", "8"})
+    public int depth;
+
+    @Param({"64x360", "160x720", "480x1080"})
+    public String tile;
+
+    private int width;
+    private int height;
+    private Object rasterizer;
+    private BufferedImage target;
+
+    @Setup
+    public void setUp() {
+        String[] size = tile.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        rasterizer = Bridge.newRasterizer();
+        target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Benchmark
+    public BufferedImage java2d() {
+        return Bridge.generateFractalImage(depth, width, height, 3);
+    }
+
+    @Benchmark
+    public BufferedImage raster() {
+        Bridge.renderInto(rasterizer, depth, 3, target);
+        return target;
+    }
+}
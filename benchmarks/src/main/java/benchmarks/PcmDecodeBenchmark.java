@@ -0,0 +1,51 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one I/O buffer of interleaved PCM to mono samples.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmDecodeBenchmark {
+
+    @Param({"PCM8_LE_U_MONO", "PCM16_LE_STEREO", "PCM16_BE_STEREO", "PCM24_LE_STEREO",
+            "PCM32_LE_STEREO", "FLOAT32_LE_STEREO"})
+    public String format;
+
+    @Param({"1024", "4096", "16384"})
+    public int bufferSize;
+
+    private AudioFormat audioFormat;
+    private Object decoder;
+    private byte[] pcm;
+    private int length;
+    private double[] samples;
+
+    @Setup
+    public void setUp() {
+        audioFormat = Signals.format(format);
+        length = bufferSize - bufferSize % audioFormat.getFrameSize();
+        pcm = Signals.pcm(audioFormat, length);
+        decoder = Bridge.newDecoder(audioFormat);
+        samples = new double[length / audioFormat.getFrameSize()];
+    }
+
+    @Benchmark
+    public double[] decoder() {
+        Bridge.decode(decoder, pcm, 0, length, samples);
+        return samples;
+    }
+
+    @Benchmark
+    public double[] bytesToSamples() {
+        return Bridge.bytesToSamples(pcm, length, audioFormat);
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic test signals, so benchmarks run offline without audio files.
+ */
+final class Signals {
+
+    private Signals() {
+    }
+
+    /**
+     * A log sweep from 30 Hz to 15 kHz mixed with a 440 Hz tone and low-level noise.
+     */
+    static double[] mix(int length, float sampleRate) {
+        Random random = new Random(42);
+        double[] samples = new double[length];
+        double phase = 0;
+        for (int i = 0; i < length; i++) {
+            double t = i / (double) length;
+            double frequency = 30 * Math.pow(500, t);
+            phase += 2 * Math.PI * frequency / sampleRate;
+            samples[i] = 0.5 * Math.sin(phase)
+                    + 0.3 * Math.sin(2 * Math.PI * 440 * i / sampleRate)
+                    + 0.05 * (random.nextDouble() * 2 - 1);
+        }
+        return samples;
+    }
+
+    /**
+     * Named benchmark formats: {@code PCM<bits>_<LE|BE>[_U]_<MONO|STEREO>} or
+     * {@code FLOAT<bits>_<LE|BE>_<MONO|STEREO>}.
+     */
+    static AudioFormat format(String name) {
+        String[] parts = name.split("_");
+        boolean isFloat = parts[0].startsWith("FLOAT");
+        int bits = Integer.parseInt(parts[0].replaceAll("\\D", ""));
+        boolean bigEndian = parts[1].equals("BE");
+        boolean unsigned = name.contains("_U_");
+        int channels = name.endsWith("STEREO") ? 2 : 1;
+        AudioFormat.Encoding encoding = isFloat ? AudioFormat.Encoding.PCM_FLOAT
+                : unsigned ? AudioFormat.Encoding.PCM_UNSIGNED : AudioFormat.Encoding.PCM_SIGNED;
+        int frameSize = channels * bits / 8;
+        return new AudioFormat(encoding, 44100, bits, channels, frameSize, 44100, bigEndian);
+    }
+
+    /**
+     * Encodes {@link #mix} into {@code bytes} bytes of interleaved PCM in the given format.
+     */
+    static byte[] pcm(AudioFormat format, int bytes) {
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        int channels = format.getChannels();
+        int frames = bytes / (bytesPerSample * channels);
+        double[] signal = mix(frames, format.getSampleRate());
+        byte[] out = new byte[bytes];
+        boolean isFloat = format.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT);
+        boolean unsigned = format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED);
+        int position = 0;
+        for (int f = 0; f < frames; f++) {
+            for (int c = 0; c < channels; c++) {
+                long raw;
+                if (isFloat) {
+                    raw = bytesPerSample == 4 ? Float.floatToIntBits((float) signal[f])
+                            : Double.doubleToLongBits(signal[f]);
+                } else {
+                    long scale = 1L << (format.getSampleSizeInBits() - 1);
+                    raw = Math.max(-scale, Math.min(scale - 1, Math.round(signal[f] * scale)));
+                    if (unsigned) {
+                        raw += scale;
+                    }
+                }
+                for (int b = 0; b < bytesPerSample; b++) {
+                    int shift = format.isBigEndian() ? (bytesPerSample - 1 - b) * 8 : b * 8;
+                    out[position + b] = (byte) (raw >> shift);
+                }
+                position += bytesPerSample;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,87 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The inner loops of the analysis path, scalar against the Vector API kernels. The vector trials
+ * need the JVM started with {@code --add-modules jdk.incubator.vector} (forks inherit it) and the
+ * application built on JDK 17+.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectralKernelsBenchmark {
+
+    private static final float SAMPLE_RATE = 44100;
+
+    @Param({"ScalarSpectralKernels", "VectorSpectralKernels"})
+    public String kernels;
+
+    @Param({"1024", "4096", "16384"})
+    public int fftSize;
+
+    private Object implementation;
+    private int half;
+    private double[] signalRe;
+    private double[] signalIm;
+    private double[] re;
+    private double[] im;
+    private double[] cos;
+    private double[] sin;
+    private double[] magnitudes;
+    private byte[] pcm;
+    private double[] samples;
+
+    @Setup
+    public void setUp() {
+        implementation = Bridge.newKernels(kernels);
+        half = fftSize / 2;
+        double[] signal = Signals.mix(fftSize, SAMPLE_RATE);
+        re = new double[half];
+        im = new double[half];
+        cos = new double[half];
+        sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            re[k] = signal[2 * k];
+            im[k] = signal[2 * k + 1];
+            cos[k] = Math.cos(-Math.PI * k / half);
+            sin[k] = Math.sin(-Math.PI * k / half);
+        }
+        signalRe = re.clone();
+        signalIm = im.clone();
+        magnitudes = new double[half];
+        pcm = Signals.pcm(Signals.format("PCM16_LE_STEREO"), fftSize * 2);
+        samples = new double[fftSize];
+    }
+
+    @Benchmark
+    public double[] butterflies() {
+        // Restore the input so repeated transforms do not overflow; both kernels pay the copy.
+        System.arraycopy(signalRe, 0, re, 0, half);
+        System.arraycopy(signalIm, 0, im, 0, half);
+        Bridge.butterflies(implementation, re, im, half, cos, sin);
+        return re;
+    }
+
+    @Benchmark
+    public double[] splitMagnitudes() {
+        Bridge.splitMagnitudes(implementation, signalRe, signalIm, half, cos, sin, magnitudes);
+        return magnitudes;
+    }
+
+    @Benchmark
+    public double sumOfSquares() {
+        return Bridge.sumOfSquares(implementation, signalRe, 1, half);
+    }
+
+    @Benchmark
+    public double[] decodeInt16LE() {
+        Bridge.decodeInt16LE(implementation, pcm, 0, fftSize, samples);
+        return samples;
+    }
+}
@@ -0,0 +1,198 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteOrder;
+
+/**
+ * {@link SpectralKernels} on the incubating Vector API, at the preferred vector width of the CPU
+ * (e.g. 4 doubles with AVX2, 8 with AVX-512, 2 with NEON). Loop tails and FFT stages narrower than
+ * one vector use scalar loops, as does the spectrum split on two-lane vectors. Compiled separately
+ * for Java 17+ and loaded reflectively by {@link SpectralKernels#get()}; the JVM must run with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+public class VectorSpectralKernels implements SpectralKernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_128;
+    private static final int LANES = DOUBLES.length();
+    // 16-bit samples per 128-bit load, and the double vectors they widen into
+    private static final int SHORTS = BYTES.length() / 2;
+    private static final int PARTS = Math.max(1, SHORTS / LANES);
+    private static final VectorShuffle<Double> REVERSE =
+            VectorShuffle.fromOp(DOUBLES, i -> LANES - 1 - i);
+
+    private final ScalarSpectralKernels scalar = new ScalarSpectralKernels();
+    // Reinterpreting bytes as shorts follows the platform byte order.
+    private final boolean vectorDecode = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN
+            && LANES <= SHORTS;
+
+    public VectorSpectralKernels() {
+        if (LANES < 2) {
+            throw new UnsupportedOperationException("No SIMD support for doubles");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + DOUBLES.vectorBitSize() + "-bit";
+    }
+
+    @Override
+    public void butterflies(double[] re, double[] im, int n, double[] stageCos,
+                            double[] stageSin) {
+        int halfBlock = 1;
+        // Stages narrower than a vector stay scalar.
+        for (; halfBlock < n && halfBlock < LANES; halfBlock <<= 1) {
+            int blockSize = halfBlock << 1;
+            for (int m = 0; m < n; m += blockSize) {
+                for (int k = 0; k < halfBlock; k++) {
+                    int i = m + k;
+                    int j = i + halfBlock;
+                    double wReal = stageCos[halfBlock + k];
+                    double wImag = stageSin[halfBlock + k];
+                    double tempReal = wReal * re[j] - wImag * im[j];
+                    double tempImag = wReal * im[j] + wImag * re[j];
+                    re[j] = re[i] - tempReal;
+                    im[j] = im[i] - tempImag;
+                    re[i] += tempReal;
+                    im[i] += tempImag;
+                }
+            }
+        }
+        for (; halfBlock < n; halfBlock <<= 1) {
+            int blockSize = halfBlock << 1;
+            for (int m = 0; m < n; m += blockSize) {
+                for (int k = 0; k < halfBlock; k += LANES) {
+                    int i = m + k;
+                    int j = i + halfBlock;
+                    DoubleVector wReal = DoubleVector.fromArray(DOUBLES, stageCos, halfBlock + k);
+                    DoubleVector wImag = DoubleVector.fromArray(DOUBLES, stageSin, halfBlock + k);
+                    DoubleVector reJ = DoubleVector.fromArray(DOUBLES, re, j);
+                    DoubleVector imJ = DoubleVector.fromArray(DOUBLES, im, j);
+                    DoubleVector reI = DoubleVector.fromArray(DOUBLES, re, i);
+                    DoubleVector imI = DoubleVector.fromArray(DOUBLES, im, i);
+
+                    DoubleVector tempReal = wReal.mul(reJ).sub(wImag.mul(imJ));
+                    DoubleVector tempImag = wReal.mul(imJ).add(wImag.mul(reJ));
+
+                    reI.sub(tempReal).intoArray(re, j);
+                    imI.sub(tempImag).intoArray(im, j);
+                    reI.add(tempReal).intoArray(re, i);
+                    imI.add(tempImag).intoArray(im, i);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void splitMagnitudes(double[] re, double[] im, int half, double[] cos, double[] sin,
+                                double[] magnitudes) {
+        int k = 1;
+        // Reversing two-lane vectors costs more than it saves (measured at 128 bits on x86).
+        int vectorEnd = LANES >= 4 ? half : 0;
+        for (; k + LANES <= vectorEnd; k += LANES) {
+            // Mirrored bins j = half - k, loaded as one vector and reversed
+            int j = half - k - (LANES - 1);
+            DoubleVector reK = DoubleVector.fromArray(DOUBLES, re, k);
+            DoubleVector imK = DoubleVector.fromArray(DOUBLES, im, k);
+            DoubleVector reJ = DoubleVector.fromArray(DOUBLES, re, j).rearrange(REVERSE);
+            DoubleVector imJ = DoubleVector.fromArray(DOUBLES, im, j).rearrange(REVERSE);
+            DoubleVector c = DoubleVector.fromArray(DOUBLES, cos, k);
+            DoubleVector s = DoubleVector.fromArray(DOUBLES, sin, k);
+
+            DoubleVector evenRe = reK.add(reJ).mul(0.5);
+            DoubleVector evenIm = imK.sub(imJ).mul(0.5);
+            DoubleVector oddRe = imK.add(imJ).mul(0.5);
+            DoubleVector oddIm = reK.sub(reJ).mul(-0.5);
+            DoubleVector outRe = evenRe.add(c.mul(oddRe)).sub(s.mul(oddIm));
+            DoubleVector outIm = evenIm.add(c.mul(oddIm)).add(s.mul(oddRe));
+            outRe.mul(outRe).add(outIm.mul(outIm)).sqrt().intoArray(magnitudes, k);
+        }
+        for (; k < half; k++) {
+            int j = half - k;
+            double evenRe = 0.5 * (re[k] + re[j]);
+            double evenIm = 0.5 * (im[k] - im[j]);
+            double oddRe = 0.5 * (im[k] + im[j]);
+            double oddIm = -0.5 * (re[k] - re[j]);
+            double outRe = evenRe + cos[k] * oddRe - sin[k] * oddIm;
+            double outIm = evenIm + cos[k] * oddIm + sin[k] * oddRe;
+            magnitudes[k] = Math.sqrt(outRe * outRe + outIm * outIm);
+        }
+    }
+
+    @Override
+    public double sumOfSquares(double[] values, int from, int to) {
+        int i = from;
+        double sum = 0;
+        if (to - from >= 2 * LANES) {
+            // Two accumulators hide the latency of the adds.
+            DoubleVector even = DoubleVector.zero(DOUBLES);
+            DoubleVector odd = even;
+            for (; i + 2 * LANES <= to; i += 2 * LANES) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLES, values, i);
+                DoubleVector b = DoubleVector.fromArray(DOUBLES, values, i + LANES);
+                even = even.add(a.mul(a));
+                odd = odd.add(b.mul(b));
+            }
+            sum = even.add(odd).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < to; i++) {
+            sum += values[i] * values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double weightedSumOfSquares(double[] values, int from, double[] weights,
+                                       int weightOffset, int count) {
+        int k = 0;
+        double sum = 0;
+        if (count >= 2 * LANES) {
+            DoubleVector even = DoubleVector.zero(DOUBLES);
+            DoubleVector odd = even;
+            for (; k + 2 * LANES <= count; k += 2 * LANES) {
+                DoubleVector a = DoubleVector.fromArray(DOUBLES, values, from + k);
+                DoubleVector b = DoubleVector.fromArray(DOUBLES, values, from + k + LANES);
+                DoubleVector wa = DoubleVector.fromArray(DOUBLES, weights, weightOffset + k);
+                DoubleVector wb = DoubleVector.fromArray(DOUBLES, weights,
+                        weightOffset + k + LANES);
+                even = even.add(wa.mul(a.mul(a)));
+                odd = odd.add(wb.mul(b.mul(b)));
+            }
+            sum = even.add(odd).reduceLanes(VectorOperators.ADD);
+        }
+        for (; k < count; k++) {
+            double v = values[from + k];
+            sum += weights[weightOffset + k] * v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public void decodeInt16LE(byte[] b, int p, int count, double[] out, int flip) {
+        if (!vectorDecode) {
+            scalar.decodeInt16LE(b, p, count, out, flip);
+            return;
+        }
+        int i = 0;
+        short flipBits = (short) flip;
+        for (; i + SHORTS <= count; i += SHORTS, p += 2 * SHORTS) {
+            ShortVector samples = ByteVector.fromArray(BYTES, b, p).reinterpretAsShorts();
+            if (flip != 0) {
+                samples = samples.lanewise(VectorOperators.XOR, flipBits);
+            }
+            for (int part = 0; part < PARTS; part++) {
+                ((DoubleVector) samples.convertShape(VectorOperators.S2D, DOUBLES, part))
+                        .mul(1.0 / 32768).intoArray(out, i + part * LANES);
+            }
+        }
+        for (; i < count; i++, p += 2) {
+            int raw = (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8;
+            out[i] = (short) (raw ^ flip) * (1.0 / 32768);
+        }
+    }
+}
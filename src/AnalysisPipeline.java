@@ -0,0 +1,447 @@
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Staged decode -> FFT -> band analysis -> render pipeline fed by the audio I/O thread.
+ * A fixed pool of frames circulates through three single-producer/single-consumer rings:
+ * the I/O thread copies each PCM chunk into a free frame, the analysis thread decodes it and feeds
+ * the {@link StftAnalyzer}, mapping bands and deriving depths for every hop the chunk completes,
+ * and the render thread pushes the newest depths to the visualizer before returning frames to the
+ * pool. {@link #submit} never blocks; when analysis or
+ * rendering falls behind the chunk is counted as dropped and playback carries on.
+ * With a {@link MultiChannelStft} every strip of a multi-channel stream is analysed in the same
+ * pass; volumes and depths then hold the bands of strip 0, then those of strip 1, and so on.
+ * After a seek, {@link #submitSeek} clears the transform's sample history in order with the
+ * chunks around it.
+ */
+public class AnalysisPipeline {
+
+    /**
+     * Band analysis stage: turns per-band levels into fractal depths. Runs on the analysis thread.
+     */
+    public interface Analyzer {
+        void analyze(double[] volumes, int[] depths);
+    }
+
+    /**
+     * Render stage: consumes the latest depths. Runs on the render thread.
+     */
+    public interface Renderer {
+        /**
+         * @param captureNanos {@link System#nanoTime()} at which the newest sample behind these
+         *                     depths was captured, or 0 if unknown (e.g. file playback)
+         */
+        void render(int[] depths, long captureNanos);
+    }
+
+    private static final int DEFAULT_FRAMES = 8;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private static final class Frame {
+        final byte[] pcm;
+        int length;
+        long captureNanos;
+        boolean precomputed;
+        // Set for seek markers: run on the analysis thread, in order with the chunks
+        Runnable seekAction;
+        final double[] volumes;
+        final int[] depths;
+
+        Frame(int bufferSize, int numBands) {
+            pcm = new byte[bufferSize];
+            volumes = new double[numBands];
+            depths = new int[numBands];
+        }
+    }
+
+    private final SpscRingBuffer<Frame> free;
+    private final SpscRingBuffer<Frame> captured;
+    private final SpscRingBuffer<Frame> analysed;
+
+    private final PcmDecoder decoder;
+    // Exactly one of the two transforms is set
+    private final StftAnalyzer stft;
+    private final MultiChannelStft multiStft;
+    private final BandMapper bandMapper;
+    private final double[] samples;
+    private final int[] lastDepths;
+    private final StftAnalyzer.SpectrumListener onSpectrum = this::analyzeHop;
+    private final MultiChannelStft.SpectraListener onSpectra = this::analyzeStrips;
+    // Frame being analysed, the number of hops it completed and when the last one ended;
+    // analysis thread only
+    private Frame current;
+    private int currentHops;
+    private long hopStart;
+    private volatile PipelineMetrics metrics = new PipelineMetrics();
+    private final Analyzer analyzer;
+    private final Renderer renderer;
+
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong analysedFrames = new AtomicLong();
+    private final AtomicLong renderedFrames = new AtomicLong();
+    private final AtomicLong coalescedFrames = new AtomicLong();
+
+    private final Thread analysisThread;
+    private final Thread renderThread;
+    private volatile boolean running;
+
+    public AnalysisPipeline(AudioFormat format, StftAnalyzer stft, double[] bandFreqLow,
+                            double[] bandFreqHigh, Analyzer analyzer, Renderer renderer) {
+        this(format, stft, bandFreqLow, bandFreqHigh, analyzer, renderer, DEFAULT_FRAMES);
+    }
+
+    /**
+     * @param stft transform used by the analysis thread; must not be shared with other threads
+     */
+    public AnalysisPipeline(AudioFormat format, StftAnalyzer stft, double[] bandFreqLow,
+                            double[] bandFreqHigh, Analyzer analyzer, Renderer renderer,
+                            int frameCount) {
+        this(format, stft, null, bandFreqLow, bandFreqHigh, analyzer, renderer, frameCount);
+    }
+
+    /**
+     * Pipeline analysing every strip of a multi-channel stream.
+     *
+     * @param stft transform of the strips; its channel count must match {@code format}, and it
+     *             must not be shared with other threads
+     * @param bandFreqLow band layout of one strip
+     */
+    public AnalysisPipeline(AudioFormat format, MultiChannelStft stft, double[] bandFreqLow,
+                            double[] bandFreqHigh, Analyzer analyzer, Renderer renderer) {
+        this(format, null, stft, bandFreqLow, bandFreqHigh, analyzer, renderer, DEFAULT_FRAMES);
+    }
+
+    private AnalysisPipeline(AudioFormat format, StftAnalyzer stft, MultiChannelStft multiStft,
+                             double[] bandFreqLow, double[] bandFreqHigh, Analyzer analyzer,
+                             Renderer renderer, int frameCount) {
+        this.analyzer = analyzer;
+        this.renderer = renderer;
+        this.decoder = new PcmDecoder(format);
+        this.stft = stft;
+        this.multiStft = multiStft;
+        int fftSize;
+        int strips;
+        if (multiStft != null) {
+            if (multiStft.getChannels() != decoder.getChannels()) {
+                throw new IllegalArgumentException("Transform expects " + multiStft.getChannels()
+                        + " channels, stream has " + decoder.getChannels());
+            }
+            this.samples = new double[decoder.framesFor(Constants.BUFFER_SIZE)
+                    * decoder.getChannels()];
+            fftSize = multiStft.getFftSize();
+            strips = multiStft.getStrips();
+        } else {
+            this.samples = new double[decoder.framesFor(Constants.BUFFER_SIZE)];
+            fftSize = stft.getFftSize();
+            strips = 1;
+        }
+        this.bandMapper = new BandMapper(format.getSampleRate(), fftSize, bandFreqLow,
+                bandFreqHigh);
+        int numBands = bandFreqLow.length * strips;
+        this.lastDepths = new int[numBands];
+
+        // Every ring can hold the whole pool, so only the free ring can ever run dry.
+        free = new SpscRingBuffer<>(frameCount);
+        captured = new SpscRingBuffer<>(frameCount);
+        analysed = new SpscRingBuffer<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            free.offer(new Frame(Constants.BUFFER_SIZE, numBands));
+        }
+
+        analysisThread = new Thread(this::runAnalysis, "analysis-stage");
+        analysisThread.setDaemon(true);
+        renderThread = new Thread(this::runRender, "render-stage");
+        renderThread.setDaemon(true);
+    }
+
+    /**
+     * Receives per-stage latencies of the analysis and render threads. Set before {@link #start}.
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void start() {
+        running = true;
+        analysisThread.start();
+        renderThread.start();
+    }
+
+    /**
+     * Stops both stage threads and waits for them to exit. Queued frames are discarded.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(analysisThread);
+        LockSupport.unpark(renderThread);
+        analysisThread.join();
+        renderThread.join();
+    }
+
+    /**
+     * Hands a PCM chunk of at most {@link Constants#BUFFER_SIZE} bytes to the pipeline. Called
+     * from the audio I/O thread only; copies the bytes and returns immediately. Returns
+     * {@code false} if the chunk was dropped because every frame is still in flight.
+     */
+    public boolean submit(byte[] buffer, int offset, int length) {
+        return submit(buffer, offset, length, 0);
+    }
+
+    /**
+     * Variant of {@link #submit(byte[], int, int)} for captured audio: {@code captureNanos} is the
+     * {@link System#nanoTime()} at which the chunk's newest sample was captured, handed on to the
+     * renderer to measure latency.
+     */
+    public boolean submit(byte[] buffer, int offset, int length, long captureNanos) {
+        checkChunkSize(length);
+        submittedFrames.lazySet(submittedFrames.get() + 1);
+        Frame frame = free.poll();
+        if (frame == null) {
+            droppedFrames.lazySet(droppedFrames.get() + 1);
+            return false;
+        }
+        System.arraycopy(buffer, offset, frame.pcm, 0, length);
+        frame.length = length;
+        frame.captureNanos = captureNanos;
+        frame.precomputed = false;
+        frame.seekAction = null;
+        captured.offer(frame);
+        LockSupport.unpark(analysisThread);
+        return true;
+    }
+
+    /**
+     * Variant of {@link #submit(byte[], int, int, long)} for a buffer, e.g. a direct buffer filled
+     * from a channel: the remaining bytes are copied straight into the pipeline's frame, and the
+     * buffer's position is advanced past them.
+     */
+    public boolean submit(ByteBuffer buffer, long captureNanos) {
+        checkChunkSize(buffer.remaining());
+        submittedFrames.lazySet(submittedFrames.get() + 1);
+        Frame frame = free.poll();
+        if (frame == null) {
+            droppedFrames.lazySet(droppedFrames.get() + 1);
+            return false;
+        }
+        offerPcm(frame, buffer, captureNanos);
+        return true;
+    }
+
+    /**
+     * Variant of {@link #submit(ByteBuffer, long)} that never drops: it waits for a free frame,
+     * so a slow analysis pushes back on the caller. Returns {@code false} only if the pipeline
+     * was stopped while waiting.
+     */
+    public boolean submitBlocking(ByteBuffer buffer, long captureNanos)
+            throws InterruptedException {
+        checkChunkSize(buffer.remaining());
+        submittedFrames.lazySet(submittedFrames.get() + 1);
+        Frame frame = awaitFreeFrame();
+        if (frame == null) {
+            return false;
+        }
+        offerPcm(frame, buffer, captureNanos);
+        return true;
+    }
+
+    private void offerPcm(Frame frame, ByteBuffer buffer, long captureNanos) {
+        frame.length = buffer.remaining();
+        buffer.get(frame.pcm, 0, frame.length);
+        frame.captureNanos = captureNanos;
+        frame.precomputed = false;
+        frame.seekAction = null;
+        captured.offer(frame);
+        LockSupport.unpark(analysisThread);
+    }
+
+    /**
+     * Hands already known band levels (e.g. from a {@link SpectralCache}) to the pipeline, skipping
+     * decode and FFT. Same threading and drop rules as {@link #submit}.
+     */
+    public boolean submitVolumes(double[] volumes) {
+        submittedFrames.lazySet(submittedFrames.get() + 1);
+        Frame frame = free.poll();
+        if (frame == null) {
+            droppedFrames.lazySet(droppedFrames.get() + 1);
+            return false;
+        }
+        System.arraycopy(volumes, 0, frame.volumes, 0, frame.volumes.length);
+        frame.length = 0;
+        frame.captureNanos = 0;
+        frame.precomputed = true;
+        frame.seekAction = null;
+        captured.offer(frame);
+        LockSupport.unpark(analysisThread);
+        return true;
+    }
+
+    /**
+     * Marks a seek in the submitted stream: once the chunks submitted so far are analysed, the
+     * transform's sample history is cleared and {@code action} runs on the analysis thread, e.g.
+     * to restore smoothing state for the new position. Unlike chunks, a seek is never dropped;
+     * this waits for a free frame if necessary. Called from the audio I/O thread only.
+     */
+    public void submitSeek(Runnable action) throws InterruptedException {
+        Frame frame = awaitFreeFrame();
+        if (frame == null) {
+            return;
+        }
+        frame.length = 0;
+        frame.captureNanos = 0;
+        frame.precomputed = false;
+        frame.seekAction = action;
+        captured.offer(frame);
+        LockSupport.unpark(analysisThread);
+    }
+
+    // Waits for a free frame; null if the pipeline stops first
+    private Frame awaitFreeFrame() throws InterruptedException {
+        Frame frame;
+        while ((frame = free.poll()) == null) {
+            if (!running) {
+                return null;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return frame;
+    }
+
+    // A longer chunk would not fit a frame, and cutting it would shift every later STFT frame.
+    private static void checkChunkSize(int length) {
+        if (length > Constants.BUFFER_SIZE) {
+            throw new IllegalArgumentException("Chunk of " + length + " bytes exceeds "
+                    + Constants.BUFFER_SIZE);
+        }
+    }
+
+    private void runAnalysis() {
+        while (running) {
+            Frame frame = captured.poll();
+            if (frame == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if (frame.seekAction != null) {
+                if (multiStft != null) {
+                    multiStft.reset();
+                } else {
+                    stft.reset();
+                }
+                frame.seekAction.run();
+                System.arraycopy(lastDepths, 0, frame.depths, 0, lastDepths.length);
+            } else if (frame.precomputed) {
+                long start = metrics.start();
+                analyzer.analyze(frame.volumes, frame.depths);
+                metrics.lap(PipelineMetrics.Stage.BANDS, start);
+            } else {
+                long start = metrics.start();
+                current = frame;
+                currentHops = 0;
+                if (multiStft != null) {
+                    int frames = decoder.decodeInterleaved(frame.pcm, 0, frame.length, samples);
+                    hopStart = metrics.lap(PipelineMetrics.Stage.DECODE, start);
+                    multiStft.process(samples, frames, onSpectra);
+                } else {
+                    int frames = decoder.decode(frame.pcm, 0, frame.length, samples);
+                    hopStart = metrics.lap(PipelineMetrics.Stage.DECODE, start);
+                    stft.process(samples, frames, onSpectrum);
+                }
+                if (currentHops == 0) {
+                    // Chunk shorter than a hop: nothing new to show yet.
+                    System.arraycopy(lastDepths, 0, frame.depths, 0, lastDepths.length);
+                }
+            }
+            System.arraycopy(frame.depths, 0, lastDepths, 0, lastDepths.length);
+            analysedFrames.lazySet(analysedFrames.get() + 1);
+            analysed.offer(frame);
+            LockSupport.unpark(renderThread);
+        }
+    }
+
+    private void analyzeHop(double[] magnitudes) {
+        long start = metrics.lap(PipelineMetrics.Stage.FFT, hopStart);
+        bandMapper.map(magnitudes, current.volumes);
+        analyzer.analyze(current.volumes, current.depths);
+        currentHops++;
+        hopStart = metrics.lap(PipelineMetrics.Stage.BANDS, start);
+    }
+
+    private void analyzeStrips(double[][] magnitudes) {
+        long start = metrics.lap(PipelineMetrics.Stage.FFT, hopStart);
+        int bands = bandMapper.getNumBands();
+        for (int s = 0; s < magnitudes.length; s++) {
+            bandMapper.map(magnitudes[s], current.volumes, s * bands);
+        }
+        analyzer.analyze(current.volumes, current.depths);
+        currentHops++;
+        hopStart = metrics.lap(PipelineMetrics.Stage.BANDS, start);
+    }
+
+    private void runRender() {
+        while (running) {
+            Frame latest = null;
+            Frame frame;
+            while ((frame = analysed.poll()) != null) {
+                if (latest != null) {
+                    // Rendering is behind; only the newest depths are worth drawing.
+                    free.offer(latest);
+                    coalescedFrames.lazySet(coalescedFrames.get() + 1);
+                }
+                latest = frame;
+            }
+            if (latest == null) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            long start = metrics.start();
+            renderer.render(latest.depths, latest.captureNanos);
+            metrics.lap(PipelineMetrics.Stage.RENDER, start);
+            renderedFrames.lazySet(renderedFrames.get() + 1);
+            free.offer(latest);
+        }
+    }
+
+    public int getAnalysisQueueDepth() {
+        return captured.size();
+    }
+
+    public int getRenderQueueDepth() {
+        return analysed.size();
+    }
+
+    public int getFreeFrames() {
+        return free.size();
+    }
+
+    public long getSubmittedFrames() {
+        return submittedFrames.get();
+    }
+
+    /**
+     * Chunks played but never analysed because the pipeline was saturated (overruns).
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getAnalysedFrames() {
+        return analysedFrames.get();
+    }
+
+    public long getRenderedFrames() {
+        return renderedFrames.get();
+    }
+
+    /**
+     * Analysed frames superseded by a newer frame before the renderer got to them.
+     */
+    public long getCoalescedFrames() {
+        return coalescedFrames.get();
+    }
+}
@@ -0,0 +1,36 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Streaming decoder for one audio file. Produces interleaved PCM in a format {@link PcmDecoder}
+ * accepts, block by block into buffers owned by the caller. Decoders come from an
+ * {@link AudioDecoderProvider}; {@link AudioDecoders#open} picks one. Not thread-safe.
+ */
+public interface AudioDecoder extends Closeable {
+
+    /**
+     * Format of the PCM written by {@link #read}.
+     */
+    AudioFormat getFormat();
+
+    /**
+     * Length of the decoded audio in frames, or {@code AudioSystem.NOT_SPECIFIED} if unknown.
+     */
+    long getFrameLength();
+
+    /**
+     * Decodes up to {@code length} bytes of whole frames into {@code buffer}, blocking until at
+     * least one frame is available. Returns the number of bytes written, or -1 at the end.
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Moves to sample frame {@code frame} (clamped to the end) if this decoder supports random
+     * access. Returns {@code false} if it does not; {@link AudioDecoders#openAt} then decodes up
+     * to the frame instead.
+     */
+    default boolean seek(long frame) throws IOException {
+        return false;
+    }
+}
@@ -0,0 +1,16 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Service provider for {@link AudioDecoder}s, registered in
+ * {@code META-INF/services/AudioDecoderProvider} and found through {@link java.util.ServiceLoader}.
+ * Implementations need a public no-argument constructor.
+ */
+public interface AudioDecoderProvider {
+
+    /**
+     * A decoder positioned at the first frame of {@code file}, or {@code null} if this provider
+     * does not handle its format.
+     */
+    AudioDecoder open(File file) throws IOException;
+}
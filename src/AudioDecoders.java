@@ -0,0 +1,119 @@
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Opens audio files through the registered {@link AudioDecoderProvider}s, in class path order.
+ * The built-in providers (the NIO WAV/AIFF reader, then Java Sound) are registered too, and are
+ * also tried last if the service registration is not on the class path.
+ */
+public final class AudioDecoders {
+
+    private AudioDecoders() {
+    }
+
+    /**
+     * The first decoder a provider offers for {@code file}.
+     */
+    public static AudioDecoder open(File file) throws UnsupportedAudioFileException, IOException {
+        Set<Class<?>> tried = new HashSet<>();
+        Iterator<AudioDecoderProvider> providers =
+                ServiceLoader.load(AudioDecoderProvider.class).iterator();
+        while (true) {
+            AudioDecoderProvider provider;
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                provider = providers.next();
+            } catch (ServiceConfigurationError e) {
+                System.err.println("Skipping audio decoder: " + e.getMessage());
+                continue;
+            }
+            tried.add(provider.getClass());
+            AudioDecoder decoder = provider.open(file);
+            if (decoder != null) {
+                return decoder;
+            }
+        }
+        AudioDecoderProvider[] builtIn = {
+                new PcmFileDecoder.Provider(), new JavaSoundDecoder.Provider()
+        };
+        for (AudioDecoderProvider provider : builtIn) {
+            if (!tried.contains(provider.getClass())) {
+                AudioDecoder decoder = provider.open(file);
+                if (decoder != null) {
+                    return decoder;
+                }
+            }
+        }
+        throw new UnsupportedAudioFileException("No decoder for " + file);
+    }
+
+    /**
+     * A decoder for {@code file} positioned at sample frame {@code frame}: constant time for
+     * decoders that can seek, otherwise by decoding and discarding the frames before it.
+     */
+    public static AudioDecoder openAt(File file, long frame)
+            throws UnsupportedAudioFileException, IOException {
+        AudioDecoder decoder = open(file);
+        if (frame <= 0 || decoder.seek(frame)) {
+            return decoder;
+        }
+        try {
+            int frameSize = decoder.getFormat().getFrameSize();
+            byte[] discard = new byte[Constants.BUFFER_SIZE - Constants.BUFFER_SIZE % frameSize];
+            long remaining = frame * frameSize;
+            while (remaining > 0) {
+                int n = decoder.read(discard, 0, (int) Math.min(discard.length, remaining));
+                if (n < 0) {
+                    break;
+                }
+                remaining -= n;
+            }
+            return decoder;
+        } catch (IOException | RuntimeException e) {
+            decoder.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@code decoder} as an audio stream; closing the stream closes the decoder.
+     */
+    public static AudioInputStream asStream(AudioDecoder decoder) {
+        return new AudioInputStream(new DecoderInput(decoder), decoder.getFormat(),
+                decoder.getFrameLength());
+    }
+
+    private static final class DecoderInput extends InputStream {
+        private final AudioDecoder decoder;
+
+        DecoderInput(AudioDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) <= 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return decoder.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            decoder.close();
+        }
+    }
+}
@@ -2,192 +2,815 @@ import javax.sound.sampled.*;
 import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.*;
-import java.util.concurrent.*;
-
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Analyses audio and drives a {@link VisualizerPanel} from it: files, preprocessed and then played
+ * back, or live input lines. One processor runs one session with the band layout and analysis
+ * settings of its {@link SessionConfig}; {@link #stop()} ends it for good. Several files or lines
+ * are combined by a {@link SourceMixer} and analysed in one pass; depending on the
+ * {@link ChannelMode} each source or each channel gets its own strip of bands, stored strip after
+ * strip in the volume and depth arrays. Files are opened through {@link AudioDecoders} and
+ * decoded ahead on a thread of their own; a single file's PCM is kept from preprocessing for
+ * playback when it fits the shared decode limit. Preprocessing also builds a {@link SeekIndex}, so
+ * playback can {@link #seek} to any time with the visuals in the state they would have reached.
+ */
 public class AudioProcessor {
 
-    private final double[] smoothedVolumeLevels;
-    private final double[] maxVolumes;
-    private final double[] minVolumes;
+    static final double SMOOTHING = 0.1;
+    // Share of frames that stay below a band's visual floor
+    private static final double DEFAULT_FLOOR_QUANTILE = 0.3;
+    // Live mode scales up to this quantile rather than the loudest frame ever seen
+    private static final double DEFAULT_CEILING_QUANTILE = 0.99;
+    // Live floors and ceilings follow the last 1024 to 2048 frames, i.e. the last 24 to 47 s at
+    // 44.1 kHz with 1024-sample frames, so they adapt when the input gets louder or quieter.
+    private static final int LIVE_STATISTICS_FRAMES = 2048;
+    private static final long PCM_POLL_MILLIS = 100;
+
+    // One entry per band of every strip; sized when the sources are opened
+    private double[] smoothedVolumeLevels = new double[0];
+    private double[] maxVolumes = new double[0];
+    private double[] minVolumes = new double[0];
     private final VisualizerPanel visualizerPanel;
     private volatile boolean running = true;
+    private volatile AnalysisPipeline pipeline;
+    private SpectralCache spectralCache;
+    private double frameSeconds;
+    private final int fftSize;
+    private final int hopSize;
+    private final WindowFunction window;
+    private final ChannelMode channelMode;
+    private final AudioFormat captureFormat;
+    private final double targetLatencyMillis;
+    private boolean useCachedFrames = true;
+    private double floorQuantile = DEFAULT_FLOOR_QUANTILE;
+    private double ceilingQuantile = DEFAULT_CEILING_QUANTILE;
+    private boolean parallelPreprocessing = true;
+    private ParallelPreprocessor.ProgressListener progressListener;
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final ThreadFactory decodeThreads = new IoThreadFactory("decode-ahead-");
+    private long sharedDecodeBytes = Constants.SHARED_DECODE_BYTES;
+    private volatile DecodedPcm sharedDecode;
+    private volatile SeekIndex seekIndex;
+    // Sample frame to continue playback from, or -1; taken by the playback thread
+    private final AtomicLong pendingSeekFrame = new AtomicLong(-1);
+    private volatile long writtenFrame;
+    private volatile float playbackFrameRate;
+    private volatile SourceDataLine playbackLine;
+    private File metricsLog;
+    private long metricsPeriodMillis;
 
     private final int numBands;
     private final double[] bandFreqLow;
     private final double[] bandFreqHigh;
 
-    public AudioProcessor(VisualizerPanel visualizerPanel) {
+    /**
+     * @param visualizerPanel receives the depths during playback; may be {@code null} if only
+     *                        {@link #preprocessAudio} is used
+     */
+    public AudioProcessor(VisualizerPanel visualizerPanel, SessionConfig config) {
         this.visualizerPanel = visualizerPanel;
-        this.numBands = Constants.getNumBands();
-        this.smoothedVolumeLevels = new double[numBands];
-        this.maxVolumes = new double[numBands];
-        this.minVolumes = new double[numBands];
-        Arrays.fill(minVolumes, Double.MAX_VALUE);
-        Arrays.fill(maxVolumes, Double.MIN_VALUE);
-        this.bandFreqLow = Constants.getBandFreqLow();
-        this.bandFreqHigh = Constants.getBandFreqHigh();
+        this.numBands = config.getNumBands();
+        this.bandFreqLow = config.getBandFreqLow();
+        this.bandFreqHigh = config.getBandFreqHigh();
+        this.fftSize = config.getFftSize();
+        this.hopSize = config.getHopSize();
+        this.window = config.getWindow();
+        this.channelMode = config.getChannelMode();
+        this.captureFormat = config.getCaptureFormat();
+        this.targetLatencyMillis = config.getTargetLatencyMillis();
     }
 
     public void preprocessAudio(String filename) throws UnsupportedAudioFileException, IOException {
-        File audioFile = new File(filename);
-        AudioInputStream audioStream = AudioSystem.getAudioInputStream(audioFile);
-        AudioFormat format = audioStream.getFormat();
+        preprocessAudio(Collections.singletonList(filename));
+    }
+
+    /**
+     * Collects the level statistics of the given files, analysed together. A single file's
+     * results are cached in a sidecar next to it.
+     */
+    public void preprocessAudio(List<String> filenames)
+            throws UnsupportedAudioFileException, IOException {
+        File audioFile = filenames.size() == 1 ? new File(filenames.get(0)) : null;
+        SourceMixer mixer = audioFile == null ? openFiles(filenames, 0) : null;
+        AudioDecoder source = mixer == null ? AudioDecoders.open(audioFile) : null;
+        AudioFormat format = mixer != null ? mixer.getFormat() : source.getFormat();
+        long frameLength = mixer != null ? mixer.getStream().getFrameLength()
+                : source.getFrameLength();
+        sharedDecode = null;
+        seekIndex = null;
+
+        AudioInputStream audioStream = null;
+        SpectralCache.Builder builder;
+        DecodedPcm recording = null;
+        File sidecar = null;
+        byte[] contentHash = null;
+        try {
+            PcmDecoder decoder = new PcmDecoder(format);
+            int[] stripOfChannel = stripsFor(mixer, format);
+            int strips = prepareStrips(stripOfChannel);
+            // Cache keys and statistics cover the bands of every strip.
+            double[] stripLow = tile(bandFreqLow, strips);
+            double[] stripHigh = tile(bandFreqHigh, strips);
+            frameSeconds = hopSize / (double) format.getSampleRate();
+
+            spectralCache = null;
+            if (audioFile != null) {
+                sidecar = SpectralCache.sidecarFor(audioFile);
+                try {
+                    contentHash = SpectralCache.contentHash(audioFile);
+                    spectralCache = SpectralCache.load(sidecar, contentHash, fftSize, hopSize,
+                            window, stripLow, stripHigh, floorQuantile);
+                } catch (IOException e) {
+                    System.err.println("Could not read spectral cache: " + e.getMessage());
+                }
+            }
+            if (spectralCache != null) {
+                applyStatistics(spectralCache);
+                buildSeekIndex(format, frameLength);
+                return;
+            }
+
+            builder = new SpectralCache.Builder(contentHash, fftSize, hopSize, window, stripLow,
+                    stripHigh, floorQuantile);
+            PcmFileInfo pcmFile = parallelPreprocessing && strips == 1 && audioFile != null
+                    ? PcmFileInfo.parse(audioFile) : null;
+            if (pcmFile != null && pcmFile.getFormat().getFrameSize() == decoder.getFrameSize()) {
+                double[] frameVolumes = new ParallelPreprocessor(ForkJoinPool.commonPool())
+                        .analyse(pcmFile, fftSize, hopSize, window, bandFreqLow, bandFreqHigh,
+                                progressListener);
+                // Merge in frame order so the statistics match the sequential pass exactly.
+                double[] volumes = new double[numBands];
+                for (int offset = 0; offset < frameVolumes.length; offset += numBands) {
+                    System.arraycopy(frameVolumes, offset, volumes, 0, numBands);
+                    builder.add(volumes);
+                }
+            } else {
+                audioStream = mixer != null ? mixer.getStream() : prefetch(source);
+                source = null;
+                if (audioFile != null && sharedDecodeBytes > 0) {
+                    recording = new DecodedPcm(audioFile, format, sharedDecodeBytes);
+                }
+                if (strips > 1) {
+                    analyseStrips(audioStream, decoder, stripOfChannel, builder, recording);
+                } else {
+                    analyse(audioStream, decoder, builder, recording);
+                }
+            }
+        } finally {
+            if (audioStream != null) {
+                audioStream.close();
+            } else if (source != null) {
+                source.close();
+            } else if (mixer != null) {
+                mixer.close();
+            }
+        }
 
-        List<Double>[] bandVolumes = new ArrayList[numBands];
-        for (int i = 0; i < numBands; i++) {
-            bandVolumes[i] = new ArrayList<>();
+        if (recording != null && recording.isComplete()) {
+            sharedDecode = recording;
+        }
+        spectralCache = builder.build();
+        applyStatistics(spectralCache);
+        buildSeekIndex(format, frameLength);
+        if (contentHash != null) {
+            try {
+                spectralCache.write(sidecar);
+            } catch (IOException e) {
+                System.err.println("Could not write spectral cache: " + e.getMessage());
+            }
         }
+    }
 
+    private void buildSeekIndex(AudioFormat format, long frameLength) {
+        seekIndex = new SeekIndex(spectralCache, format.getSampleRate(), format.getFrameSize(),
+                frameLength, SMOOTHING);
+    }
+
+    // Sequential pass over a single-strip stream, kept in 'recording' unless that is null.
+    private void analyse(AudioInputStream audioStream, PcmDecoder decoder,
+                         SpectralCache.Builder builder, DecodedPcm recording) throws IOException {
+        double[] samples = new double[decoder.framesFor(Constants.BUFFER_SIZE)];
+        StftAnalyzer stft = new StftAnalyzer(fftSize, hopSize, window);
+        BandMapper bandMapper = new BandMapper(decoder.getFormat().getSampleRate(), fftSize,
+                bandFreqLow, bandFreqHigh);
+        double[] volumes = new double[numBands];
+        int totalFrames = (int) Math.min(Integer.MAX_VALUE,
+                audioStream.getFrameLength() / hopSize);
+        StftAnalyzer.SpectrumListener collect = magnitudes -> {
+            bandMapper.map(magnitudes, volumes);
+            builder.add(volumes);
+        };
         byte[] bytesBuffer = new byte[Constants.BUFFER_SIZE];
         int bytesRead;
         while ((bytesRead = audioStream.read(bytesBuffer)) != -1) {
-            double[] samples = AudioUtils.bytesToSamples(bytesBuffer, bytesRead, format);
-            double[] magnitudes = FFT.computeFFT(samples);
+            if (recording != null) {
+                recording.append(bytesBuffer, 0, bytesRead);
+            }
+            int frames = decoder.decode(bytesBuffer, 0, bytesRead, samples);
+            stft.process(samples, frames, collect);
+            if (progressListener != null && audioStream.getFrameLength() > 0) {
+                progressListener.onProgress(builder.getFrameCount(), totalFrames);
+            }
+        }
+    }
 
-            for (int i = 0; i < numBands; i++) {
-                double volume = AudioUtils.getVolumeInBand(
-                    magnitudes,
-                    format.getSampleRate(),
-                    bandFreqLow[i],
-                    bandFreqHigh[i]
-                );
-                bandVolumes[i].add(volume);
+    // Sequential pass over a stream with several strips; decode and FFT cover all strips at once.
+    private void analyseStrips(AudioInputStream audioStream, PcmDecoder decoder,
+                               int[] stripOfChannel, SpectralCache.Builder builder,
+                               DecodedPcm recording) throws IOException {
+        double[] samples = new double[decoder.framesFor(Constants.BUFFER_SIZE)
+                * decoder.getChannels()];
+        MultiChannelStft stft = new MultiChannelStft(fftSize, hopSize, window, stripOfChannel);
+        BandMapper bandMapper = new BandMapper(decoder.getFormat().getSampleRate(), fftSize,
+                bandFreqLow, bandFreqHigh);
+        double[] volumes = new double[numBands * stft.getStrips()];
+        int totalFrames = (int) Math.min(Integer.MAX_VALUE,
+                audioStream.getFrameLength() / hopSize);
+        MultiChannelStft.SpectraListener collect = magnitudes -> {
+            for (int s = 0; s < magnitudes.length; s++) {
+                bandMapper.map(magnitudes[s], volumes, s * numBands);
+            }
+            builder.add(volumes);
+        };
+        byte[] bytesBuffer = new byte[Constants.BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = audioStream.read(bytesBuffer)) != -1) {
+            if (recording != null) {
+                recording.append(bytesBuffer, 0, bytesRead);
+            }
+            int frames = decoder.decodeInterleaved(bytesBuffer, 0, bytesRead, samples);
+            stft.process(samples, frames, collect);
+            if (progressListener != null && audioStream.getFrameLength() > 0) {
+                progressListener.onProgress(builder.getFrameCount(), totalFrames);
             }
         }
-        audioStream.close();
+    }
 
-        for (int i = 0; i < numBands; i++) {
-            List<Double> volumes = bandVolumes[i];
-            maxVolumes[i] = Collections.max(volumes);
-            Collections.sort(volumes);
-            int index = (int) (volumes.size() * 0.3);
-            minVolumes[i] = volumes.get(index);
+    private void applyStatistics(SpectralCache cache) {
+        if (cache.getFrameCount() == 0) {
+            return;
         }
+        System.arraycopy(cache.getMaxVolumes(), 0, maxVolumes, 0, maxVolumes.length);
+        System.arraycopy(cache.getFloorVolumes(), 0, minVolumes, 0, minVolumes.length);
+    }
+
+    private SourceMixer openFiles(List<String> filenames, long frame)
+            throws UnsupportedAudioFileException, IOException {
+        List<AudioInputStream> streams = new ArrayList<>();
+        try {
+            for (String filename : filenames) {
+                streams.add(prefetch(AudioDecoders.openAt(new File(filename), frame)));
+            }
+            return new SourceMixer(streams);
+        } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+            for (AudioInputStream stream : streams) {
+                stream.close();
+            }
+            throw e;
+        }
+    }
+
+    // 'source' decoded ahead of its reader on a thread of its own.
+    private AudioInputStream prefetch(AudioDecoder source) {
+        return AudioDecoders.asStream(new PrefetchingDecoder(source, Constants.PREFETCH_BLOCKS,
+                Constants.PREFETCH_BLOCK_BYTES, decodeThreads));
+    }
+
+    // Strip of every channel of the analysed stream, per the channel mode.
+    private int[] stripsFor(SourceMixer mixer, AudioFormat format) {
+        int[] channelsPerSource = mixer != null ? mixer.getChannelsPerSource()
+                : new int[]{Math.max(1, format.getChannels())};
+        return channelMode.stripOfChannel(channelsPerSource);
+    }
+
+    // Sizes the per-band state for the given strips, keeping it if the layout is unchanged.
+    private int prepareStrips(int[] stripOfChannel) {
+        int strips = 0;
+        for (int strip : stripOfChannel) {
+            strips = Math.max(strips, strip + 1);
+        }
+        int total = numBands * strips;
+        if (smoothedVolumeLevels.length != total) {
+            smoothedVolumeLevels = new double[total];
+            maxVolumes = new double[total];
+            minVolumes = new double[total];
+            Arrays.fill(minVolumes, Double.MAX_VALUE);
+            Arrays.fill(maxVolumes, Double.MIN_VALUE);
+        }
+        return strips;
+    }
+
+    private static double[] tile(double[] bands, int strips) {
+        double[] tiled = new double[bands.length * strips];
+        for (int s = 0; s < strips; s++) {
+            System.arraycopy(bands, 0, tiled, s * bands.length, bands.length);
+        }
+        return tiled;
+    }
+
+    private AnalysisPipeline newPipeline(AudioFormat format, int[] stripOfChannel,
+                                         AnalysisPipeline.Analyzer analyzer) {
+        if (prepareStrips(stripOfChannel) == 1) {
+            return new AnalysisPipeline(format, new StftAnalyzer(fftSize, hopSize, window),
+                    bandFreqLow, bandFreqHigh, analyzer, this::renderDepths);
+        }
+        return new AnalysisPipeline(format,
+                new MultiChannelStft(fftSize, hopSize, window, stripOfChannel), bandFreqLow,
+                bandFreqHigh, analyzer, this::renderDepths);
     }
 
     public void processAudio(String filename) throws UnsupportedAudioFileException, IOException,
             LineUnavailableException, InterruptedException {
-        running = true; // Ensure running is true when starting
-        File audioFile = new File(filename);
-        AudioInputStream audioStream = AudioSystem.getAudioInputStream(audioFile);
-        AudioFormat format = audioStream.getFormat();
+        processAudio(Collections.singletonList(filename));
+    }
 
-        SourceDataLine audioLine = AudioSystem.getSourceDataLine(format);
-        audioLine.open(format);
-        audioLine.start();
+    /**
+     * Plays the given files together, mixed down if there are several, while visualizing them.
+     */
+    public void processAudio(List<String> filenames) throws UnsupportedAudioFileException,
+            IOException, LineUnavailableException, InterruptedException {
+        processAudio(filenames, 0);
+    }
 
-        byte[] bytesBuffer = new byte[Constants.BUFFER_SIZE];
-        int bytesRead;
-        double alpha = 0.1;
-
-        ExecutorService executor = Executors.newFixedThreadPool(numBands);
-
-        while (running && (bytesRead = audioStream.read(bytesBuffer)) != -1) {
-            double[] samples = AudioUtils.bytesToSamples(bytesBuffer, bytesRead, format);
-            double[] magnitudes = FFT.computeFFT(samples);
-
-            CountDownLatch latch = new CountDownLatch(numBands);
-
-            for (int i = 0; i < numBands; i++) {
-                final int bandIndex = i;
-                executor.submit(() -> {
-                    double volume = AudioUtils.getVolumeInBand(
-                        magnitudes,
-                        format.getSampleRate(),
-                        bandFreqLow[bandIndex],
-                        bandFreqHigh[bandIndex]
-                    );
-                    smoothedVolumeLevels[bandIndex] = alpha * volume + (1 - alpha) *
-                            smoothedVolumeLevels[bandIndex];
-                    int depth = AudioUtils.mapVolumeToDepth(
-                        smoothedVolumeLevels[bandIndex],
-                        minVolumes[bandIndex],
-                        maxVolumes[bandIndex]
-                    );
-
-                    visualizerPanel.updateFractalImage(bandIndex, depth);
-
-                    latch.countDown();
-                });
+    /**
+     * Plays the given files from {@code startSeconds} on, e.g. a cue point. With a
+     * {@link #getSeekIndex() seek index} the visuals start in the state they would have reached
+     * by playing from the beginning.
+     */
+    public void processAudio(List<String> filenames, double startSeconds)
+            throws UnsupportedAudioFileException, IOException, LineUnavailableException,
+            InterruptedException {
+        SourceMixer mixer = filenames.size() > 1 ? openFiles(filenames, 0) : null;
+        AudioInputStream audioStream = mixer != null ? mixer.getStream()
+                : openForPlayback(new File(filenames.get(0)), 0);
+        Playback playback = new Playback(filenames, audioStream, mixer);
+        try {
+            AudioFormat format = mixer != null ? mixer.getPlaybackFormat()
+                    : audioStream.getFormat();
+            SourceDataLine audioLine = AudioSystem.getSourceDataLine(format);
+            audioLine.open(format);
+            try {
+                audioLine.start();
+                play(playback, audioLine, startSeconds);
+                if (running) {
+                    audioLine.drain();
+                } else {
+                    audioLine.flush();
+                }
+            } finally {
+                playbackLine = null;
+                audioLine.close();
             }
+        } finally {
+            playback.stream.close();
+        }
+    }
+
+    // The stream being played; replaced on every seek
+    private static final class Playback {
+        final List<String> filenames;
+        AudioInputStream stream;
+        SourceMixer mixer;
 
-            latch.await();
-            audioLine.write(bytesBuffer, 0, bytesRead);
+        Playback(List<String> filenames, AudioInputStream stream, SourceMixer mixer) {
+            this.filenames = filenames;
+            this.stream = stream;
+            this.mixer = mixer;
         }
+    }
+
+    // Replays the decode kept from preprocessing if it covers 'file', else decodes it again.
+    private AudioInputStream openForPlayback(File file, long frame)
+            throws UnsupportedAudioFileException, IOException {
+        DecodedPcm shared = sharedDecode;
+        if (shared != null && shared.matches(file)) {
+            return shared.openStream(frame);
+        }
+        return prefetch(AudioDecoders.openAt(file, frame));
+    }
+
+    // Reopens the played files at 'frame'; positioning is constant time for WAV/AIFF and shared
+    // decodes, other formats are decoded up to the frame.
+    private void reopen(Playback playback, long frame)
+            throws UnsupportedAudioFileException, IOException {
+        playback.stream.close();
+        if (playback.mixer != null) {
+            playback.mixer = openFiles(playback.filenames, frame);
+            playback.stream = playback.mixer.getStream();
+        } else {
+            playback.stream = openForPlayback(new File(playback.filenames.get(0)), frame);
+        }
+    }
+
+    private void play(Playback playback, SourceDataLine audioLine, double startSeconds)
+            throws IOException, UnsupportedAudioFileException, InterruptedException {
+        AudioFormat format = playback.stream.getFormat();
+        AnalysisPipeline pipeline = newPipeline(format, stripsFor(playback.mixer, format),
+                (volumes, depths) -> {
+                    for (int i = 0; i < volumes.length; i++) {
+                        smoothedVolumeLevels[i] = SMOOTHING * volumes[i] + (1 - SMOOTHING) *
+                                smoothedVolumeLevels[i];
+                        depths[i] = AudioUtils.mapVolumeToDepth(
+                            smoothedVolumeLevels[i],
+                            minVolumes[i],
+                            maxVolumes[i]
+                        );
+                    }
+                });
+        startMetrics(pipeline);
+        this.pipeline = pipeline;
+        pipeline.start();
+        try {
+            // Replay from the preprocessing pass when possible instead of running the FFT again.
+            SpectralCache cache = useCachedFrames ? spectralCache : null;
+            SeekIndex index = seekIndex;
+            double[] cachedVolumes = new double[smoothedVolumeLevels.length];
+            int frameSize = format.getFrameSize();
+            int cachedHop = cache != null ? cache.getHopSize() : hopSize;
+            long position = 0;
+            // Newest cached STFT frame handed to the smoother
+            long lastCachedFrame = -1;
+            writtenFrame = 0;
+            playbackFrameRate = format.getFrameRate();
+            playbackLine = audioLine;
+            pendingSeekFrame.set(-1);
+            if (startSeconds > 0) {
+                seek(startSeconds);
+            }
 
-        executor.shutdownNow();
-        audioLine.drain();
-        audioLine.close();
-        audioStream.close();
+            byte[] bytesBuffer = new byte[Constants.BUFFER_SIZE];
+            byte[] playBuffer = playback.mixer != null
+                    ? new byte[playback.mixer.playbackBytesFor(Constants.BUFFER_SIZE)]
+                    : bytesBuffer;
+            int bytesRead;
+            while (running) {
+                long seekFrame = pendingSeekFrame.getAndSet(-1);
+                if (seekFrame >= 0) {
+                    reopen(playback, seekFrame);
+                    audioLine.flush();
+                    position = seekFrame * frameSize;
+                    writtenFrame = seekFrame;
+                    lastCachedFrame = seekFrame / cachedHop - 1;
+                    double[] restored = new double[smoothedVolumeLevels.length];
+                    if (index != null && restored.length == index.getNumVolumes()) {
+                        index.smoothedLevelsAt(index.stftFrameAt(seekFrame), restored);
+                    }
+                    pipeline.submitSeek(() -> System.arraycopy(restored, 0, smoothedVolumeLevels,
+                            0, restored.length));
+                }
+                if ((bytesRead = playback.stream.read(bytesBuffer)) == -1) {
+                    break;
+                }
+                // Newest STFT frame that is complete once this chunk has been played; every frame
+                // since the last one is submitted so smoothing runs once per hop, as uncached.
+                long frameIndex = (position + bytesRead) / frameSize / cachedHop - 1;
+                if (cache != null && frameIndex < cache.getFrameCount()) {
+                    for (long f = lastCachedFrame + 1; f <= frameIndex; f++) {
+                        cache.getFrame((int) f, cachedVolumes);
+                        pipeline.submitVolumes(cachedVolumes);
+                    }
+                    lastCachedFrame = Math.max(lastCachedFrame, frameIndex);
+                } else {
+                    pipeline.submit(bytesBuffer, 0, bytesRead);
+                }
+                if (metrics.isEnabled()) {
+                    metrics.recordLineAvailable(audioLine.available(),
+                            audioLine.getBufferSize());
+                }
+                int playBytes = playback.mixer != null
+                        ? playback.mixer.mixDown(bytesBuffer, bytesRead, playBuffer)
+                        : bytesRead;
+                long writeStart = metrics.start();
+                audioLine.write(playBuffer, 0, playBytes);
+                metrics.lap(PipelineMetrics.Stage.WRITE, writeStart);
+                position += bytesRead;
+                writtenFrame = position / frameSize;
+            }
+        } finally {
+            pipeline.stop();
+            metrics.stopDump();
+        }
     }
 
-    public void processLiveAudio() throws LineUnavailableException, InterruptedException {
-        running = true; // Ensure running is true when starting
-        AudioFormat format = new AudioFormat(44100, 16, 2, true, false);
-        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+    public void processLiveAudio() throws LineUnavailableException, InterruptedException,
+            IOException {
+        processLiveAudio(Collections.<Mixer.Info>emptyList());
+    }
 
-        if (!AudioSystem.isLineSupported(info)) {
+    /**
+     * Captures from the input line of every given mixer at once, or from the default input line
+     * if the list is empty, until stopped.
+     */
+    public void processLiveAudio(List<Mixer.Info> inputs) throws LineUnavailableException,
+            InterruptedException, IOException {
+        if (inputs.isEmpty()
+                && AudioSystem.getTargetLineInfo(new Line.Info(TargetDataLine.class)).length == 0) {
             System.err.println("Line not supported");
             JOptionPane.showMessageDialog(null, "Live audio capture is not supported on this system.");
             return;
         }
 
-        TargetDataLine targetLine = (TargetDataLine) AudioSystem.getLine(info);
-        targetLine.open(format);
-        targetLine.start();
+        List<LiveInput> lines = new ArrayList<>();
+        try {
+            if (inputs.isEmpty()) {
+                lines.add(LiveInput.open(null, captureFormat, targetLatencyMillis, hopSize,
+                        Constants.BUFFER_SIZE));
+            }
+            for (Mixer.Info input : inputs) {
+                // Later lines follow the first so the mixer can combine them.
+                AudioFormat preferred = lines.isEmpty() ? captureFormat
+                        : lines.get(0).getFormat();
+                lines.add(LiveInput.open(input, preferred, targetLatencyMillis, hopSize,
+                        Constants.BUFFER_SIZE));
+            }
+            List<AudioInputStream> streams = new ArrayList<>();
+            for (LiveInput line : lines) {
+                streams.add(new AudioInputStream(line.getLine()));
+            }
+            for (LiveInput line : lines) {
+                line.getLine().start();
+            }
+            capture(lines.get(0), lines.size() > 1 ? new SourceMixer(streams) : null);
+        } finally {
+            for (LiveInput line : lines) {
+                line.getLine().stop();
+                line.getLine().close();
+            }
+        }
+    }
 
-        byte[] bytesBuffer = new byte[Constants.BUFFER_SIZE];
-        int bytesRead;
-        double alpha = 0.1;
+    // Reads from 'live', or from all lines through 'mixer' if several are captured at once.
+    private void capture(LiveInput live, SourceMixer mixer)
+            throws InterruptedException, IOException {
+        AudioFormat format = mixer != null ? mixer.getFormat() : live.getFormat();
+        int readBytes = mixer != null
+                ? Math.min(Constants.BUFFER_SIZE / format.getFrameSize(), live.getReadFrames())
+                        * format.getFrameSize()
+                : live.getReadBytes();
+
+        AnalysisPipeline pipeline = newLivePipeline(format, stripsFor(mixer, format));
+        startMetrics(pipeline);
+        this.pipeline = pipeline;
+        pipeline.start();
+        try {
+            metrics.attachCapture(live);
+            if (visualizerPanel != null) {
+                visualizerPanel.setLatencyMetrics(metrics);
+            }
+            byte[] bytesBuffer = new byte[Constants.BUFFER_SIZE];
+            int bytesRead;
+            while (running) {
+                long readStart = metrics.start();
+                bytesRead = mixer != null ? mixer.getStream().read(bytesBuffer, 0, readBytes)
+                        : live.read(bytesBuffer);
+                long captureNanos = live.captureNanos();
+                metrics.lap(PipelineMetrics.Stage.CAPTURE, readStart);
+                if (bytesRead < 0) {
+                    break;
+                }
+                // A short read (line stopped) carries only what was actually captured.
+                if (bytesRead > 0) {
+                    pipeline.submit(bytesBuffer, 0, bytesRead, captureNanos);
+                }
+            }
+        } finally {
+            pipeline.stop();
+            metrics.stopDump();
+        }
+    }
 
-        ExecutorService executor = Executors.newFixedThreadPool(numBands);
+    // Pipeline for audio as it arrives: levels are scaled by running statistics.
+    private AnalysisPipeline newLivePipeline(AudioFormat format, int[] stripOfChannel) {
+        int numVolumes = numBands * prepareStrips(stripOfChannel);
+        WindowedBandStatistics statistics = new WindowedBandStatistics(numVolumes,
+                LIVE_STATISTICS_FRAMES, floorQuantile, ceilingQuantile);
+        return newPipeline(format, stripOfChannel,
+                (volumes, depths) -> {
+                    statistics.add(volumes);
+                    for (int i = 0; i < volumes.length; i++) {
+                        double volume = volumes[i];
+                        minVolumes[i] = statistics.getQuantile(i, 0);
+                        maxVolumes[i] = statistics.getQuantile(i, 1);
+
+                        smoothedVolumeLevels[i] = SMOOTHING * volume + (1 - SMOOTHING) *
+                                smoothedVolumeLevels[i];
+                        depths[i] = AudioUtils.mapVolumeToDepth(
+                            smoothedVolumeLevels[i],
+                            minVolumes[i],
+                            maxVolumes[i]
+                        );
+                    }
+                });
+    }
 
-        while (running) {
-            bytesRead = targetLine.read(bytesBuffer, 0, bytesBuffer.length);
+    /**
+     * Visualizes raw PCM from another process until its writer closes the stream or the session is
+     * stopped. Nothing is played back. Closes {@code input} when done.
+     */
+    public void processPcmInput(PcmChannelInput input) throws IOException, InterruptedException {
+        try {
+            AudioFormat format = input.getFormat();
+            AnalysisPipeline pipeline = newLivePipeline(format, stripsFor(null, format));
+            startMetrics(pipeline);
+            this.pipeline = pipeline;
+            pipeline.start();
+            try {
+                metrics.attachCapture(input);
+                if (visualizerPanel != null) {
+                    visualizerPanel.setLatencyMetrics(metrics);
+                }
+                while (running) {
+                    long readStart = metrics.start();
+                    // Bounded wait, so a stop is noticed even while the writer is silent
+                    ByteBuffer chunk = input.poll(PCM_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    metrics.lap(PipelineMetrics.Stage.CAPTURE, readStart);
+                    if (chunk == null) {
+                        if (input.isFinished()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    // Blocking input waits for the pipeline, so the writer is held back
+                    // instead of losing audio here.
+                    if (input.getOverflow() == PcmChannelInput.Overflow.BLOCK) {
+                        pipeline.submitBlocking(chunk, input.captureNanos());
+                        continue;
+                    }
+                    int length = chunk.remaining();
+                    if (!pipeline.submit(chunk, input.captureNanos())) {
+                        input.recordDropped(length);
+                    }
+                }
+            } finally {
+                pipeline.stop();
+                metrics.stopDump();
+            }
+        } finally {
+            input.close();
+        }
+    }
 
-            double[] samples = AudioUtils.bytesToSamples(bytesBuffer, bytesRead, format);
-            double[] magnitudes = FFT.computeFFT(samples);
+    private void startMetrics(AnalysisPipeline pipeline) {
+        pipeline.setMetrics(metrics);
+        metrics.attach(pipeline);
+        if (metricsLog != null) {
+            metrics.startDump(metricsLog, metricsPeriodMillis);
+        }
+    }
 
-            CountDownLatch latch = new CountDownLatch(numBands);
+    private void renderDepths(int[] depths, long captureNanos) {
+        visualizerPanel.updateFrame(depths, captureNanos);
+    }
 
-            for (int i = 0; i < numBands; i++) {
-                final int bandIndex = i;
-                executor.submit(() -> {
-                    double volume = AudioUtils.getVolumeInBand(
-                        magnitudes,
-                        format.getSampleRate(),
-                        bandFreqLow[bandIndex],
-                        bandFreqHigh[bandIndex]
-                    );
+    /**
+     * Continues playback at {@code seconds}, clamped to the file. May be called from any thread,
+     * also repeatedly while scrubbing; only the latest request is carried out, at the start of the
+     * next chunk.
+     */
+    public void seek(double seconds) {
+        SeekIndex index = seekIndex;
+        long frame = index != null ? index.frameAt(seconds)
+                : (long) Math.max(0, seconds * playbackFrameRate);
+        pendingSeekFrame.set(frame);
+    }
 
-                    synchronized (this) {
-                        if (volume < minVolumes[bandIndex]) minVolumes[bandIndex] = volume;
-                        if (volume > maxVolumes[bandIndex]) maxVolumes[bandIndex] = volume;
-                    }
+    /**
+     * Time of the audio now leaving the speakers: what was written to the line minus what it
+     * still holds.
+     */
+    public double getPlaybackSeconds() {
+        float rate = playbackFrameRate;
+        if (rate <= 0) {
+            return 0;
+        }
+        long frame = writtenFrame;
+        SourceDataLine line = playbackLine;
+        if (line != null) {
+            frame -= (line.getBufferSize() - line.available()) / line.getFormat().getFrameSize();
+        }
+        return Math.max(0, frame) / (double) rate;
+    }
 
-                    smoothedVolumeLevels[bandIndex] = alpha * volume + (1 - alpha) * smoothedVolumeLevels[bandIndex];
-                    int depth = AudioUtils.mapVolumeToDepth(
-                        smoothedVolumeLevels[bandIndex],
-                        minVolumes[bandIndex],
-                        maxVolumes[bandIndex]
-                    );
+    /**
+     * Length of the preprocessed file(s) in seconds, 0 if not known.
+     */
+    public double getDurationSeconds() {
+        SeekIndex index = seekIndex;
+        return index != null ? index.getDurationSeconds() : 0;
+    }
 
-                    visualizerPanel.updateFractalImage(bandIndex, depth);
+    /**
+     * The seek index of the last preprocessing, or {@code null}.
+     */
+    public SeekIndex getSeekIndex() {
+        return seekIndex;
+    }
 
-                    latch.countDown();
-                });
-            }
+    /**
+     * Band levels of every STFT frame of the last preprocessed file, or {@code null} before
+     * {@link #preprocessAudio} has run.
+     */
+    public SpectralCache getSpectralCache() {
+        return spectralCache;
+    }
+
+    /**
+     * Time between consecutive STFT frames (the hop) of the last preprocessed file.
+     */
+    public double getFrameSeconds() {
+        return frameSeconds;
+    }
+
+    /**
+     * Whether playback drives the visuals from the band levels recorded during preprocessing
+     * rather than analysing the audio again. Enabled by default.
+     */
+    public void setUseCachedFrames(boolean useCachedFrames) {
+        this.useCachedFrames = useCachedFrames;
+    }
 
-            latch.await();
+    /**
+     * Whether preprocessing of WAV/AIFF files is split across cores. Results are identical to the
+     * sequential pass; other formats are always processed sequentially. Enabled by default.
+     */
+    public void setParallelPreprocessing(boolean parallelPreprocessing) {
+        this.parallelPreprocessing = parallelPreprocessing;
+    }
+
+    /**
+     * Largest decoded file, in bytes, kept from preprocessing so playback does not decode it
+     * again; 0 disables sharing. Only single files are shared.
+     */
+    public void setSharedDecodeBytes(long sharedDecodeBytes) {
+        this.sharedDecodeBytes = sharedDecodeBytes;
+        if (sharedDecodeBytes <= 0) {
+            sharedDecode = null;
         }
+    }
+
+    /**
+     * Receives preprocessing progress in STFT frames, possibly from several threads.
+     */
+    public void setProgressListener(ParallelPreprocessor.ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Quantile of each band's level distribution used as the visual floor (depth 0). Takes
+     * effect for the next preprocessing pass or live session.
+     */
+    public void setFloorQuantile(double floorQuantile) {
+        this.floorQuantile = floorQuantile;
+    }
 
-        executor.shutdownNow();
-        targetLine.stop();
-        targetLine.close();
+    /**
+     * Quantile used as the live-mode ceiling (maximum depth).
+     */
+    public void setCeilingQuantile(double ceilingQuantile) {
+        this.ceilingQuantile = ceilingQuantile;
     }
 
+    /**
+     * Latency histograms and counters of this processor's sessions. Disabled until
+     * {@code getMetrics().setEnabled(true)}.
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Appends a metrics summary to {@code file} every {@code periodMillis} while a session runs,
+     * or never for {@code null}. Takes effect for the next session.
+     */
+    public void setMetricsLog(File file, long periodMillis) {
+        this.metricsLog = file;
+        this.metricsPeriodMillis = periodMillis;
+    }
+
+    /**
+     * Pipeline of the current playback or capture session, or {@code null} before one starts.
+     */
+    public AnalysisPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Ends the session: playback or capture stops after the current chunk. Final.
+     */
     public void stop() {
         running = false;
     }
+
+    public boolean isStopped() {
+        return !running;
+    }
 }
@@ -2,46 +2,14 @@ import javax.sound.sampled.AudioFormat;
 
 public class AudioUtils {
 
+    /**
+     * Allocating convenience wrapper around {@link PcmDecoder}. Hot paths should keep a decoder and
+     * an output buffer per stream instead.
+     */
     public static double[] bytesToSamples(byte[] buffer, int bytesRead, AudioFormat format) {
-        int bytesPerSample = format.getSampleSizeInBits() / 8;
-        int numChannels = format.getChannels();
-        boolean isBigEndian = format.isBigEndian();
-        boolean isSigned = format.getEncoding().equals(AudioFormat.Encoding.PCM_SIGNED);
-
-        int numSamples = bytesRead / (bytesPerSample * numChannels);
-        double[] samples = new double[numSamples];
-
-        for (int i = 0; i < numSamples; i++) {
-            int sampleStart = i * bytesPerSample * numChannels;
-            int sample = 0;
-
-            for (int channel = 0; channel < numChannels; channel++) {
-                int channelStart = sampleStart + channel * bytesPerSample;
-                int value = 0;
-
-                if (bytesPerSample == 2) {
-                    if (isBigEndian) {
-                        value = ((buffer[channelStart] << 8) | (buffer[channelStart + 1] & 0xFF));
-                    } else {
-                        value = ((buffer[channelStart + 1] << 8) | (buffer[channelStart] & 0xFF));
-                    }
-                    if (!isSigned) {
-                        value -= 32768;
-                    }
-                } else if (bytesPerSample == 1) {
-                    value = buffer[channelStart];
-                    if (!isSigned) {
-                        value -= 128;
-                    }
-                }
-
-                sample += value;
-            }
-
-            sample /= numChannels;
-            samples[i] = sample / 32768.0;
-        }
-
+        PcmDecoder decoder = new PcmDecoder(format);
+        double[] samples = new double[decoder.framesFor(bytesRead)];
+        decoder.decode(buffer, 0, bytesRead, samples);
         return samples;
     }
 
@@ -55,10 +23,8 @@ public class AudioUtils {
         lowIndex = Math.max(0, lowIndex);
         highIndex = Math.min(magnitudes.length - 1, highIndex);
 
-        double sumSquares = 0;
-        for (int i = lowIndex; i <= highIndex; i++) {
-            sumSquares += magnitudes[i] * magnitudes[i];
-        }
+        double sumSquares = SpectralKernels.get().sumOfSquares(magnitudes, lowIndex,
+                highIndex + 1);
 
         int count = highIndex - lowIndex + 1;
         return Math.sqrt(sumSquares / count);
@@ -0,0 +1,135 @@
+import java.util.Locale;
+
+/**
+ * Edges of a set of contiguous frequency bands, either the built-in 20-band layout or generated
+ * for any band count: equally wide on a logarithmic, mel or Bark scale between two frequencies,
+ * or consecutive third-octave bands. Generated layouts scale to hundreds of bands; bands narrower
+ * than an FFT bin share that bin, and bands above Nyquist read as silent.
+ */
+public final class BandLayout {
+
+    public enum Scale { CLASSIC, LOG, MEL, BARK, THIRD_OCTAVE }
+
+    private final double[] low;
+    private final double[] high;
+
+    private BandLayout(double[] low, double[] high) {
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * {@code numBands} bands of {@code scale} over the audible range.
+     */
+    public static BandLayout of(Scale scale, int numBands) {
+        return generate(scale, numBands, Constants.BAND_MIN_FREQ, Constants.BAND_MAX_FREQ);
+    }
+
+    /**
+     * Most bands {@code scale} can have over the audible range.
+     */
+    public static int maxBands(Scale scale) {
+        return maxBands(scale, Constants.BAND_MIN_FREQ, Constants.BAND_MAX_FREQ);
+    }
+
+    /**
+     * Most bands {@code scale} can have from {@code minFreq} to {@code maxFreq}: the classic layout
+     * has {@link Constants#MAX_BANDS}, third-octave layouts one per nominal band centred between
+     * the two (31 for 20 Hz to 20 kHz), the others {@link Constants#MAX_GENERATED_BANDS}.
+     */
+    public static int maxBands(Scale scale, double minFreq, double maxFreq) {
+        switch (scale) {
+            case CLASSIC:
+                return Constants.MAX_BANDS;
+            case THIRD_OCTAVE:
+                return (int) (thirdOctaveIndex(maxFreq) - thirdOctaveIndex(minFreq) + 1);
+            default:
+                return Constants.MAX_GENERATED_BANDS;
+        }
+    }
+
+    /**
+     * {@code numBands} bands of {@code scale} from {@code minFreq} to {@code maxFreq}, at most
+     * {@link #maxBands(Scale, double, double)}. The {@link Scale#CLASSIC} layout is fixed;
+     * {@link Scale#THIRD_OCTAVE} starts at the nominal band centred nearest {@code minFreq}.
+     */
+    public static BandLayout generate(Scale scale, int numBands, double minFreq, double maxFreq) {
+        if (numBands <= 0) {
+            throw new IllegalArgumentException("Band count must be positive: " + numBands);
+        }
+        if (minFreq <= 0 || maxFreq <= minFreq) {
+            throw new IllegalArgumentException("Invalid frequency range: " + minFreq + " - "
+                    + maxFreq + " Hz");
+        }
+        int maxBands = maxBands(scale, minFreq, maxFreq);
+        if (numBands > maxBands) {
+            throw new IllegalArgumentException("The " + scale.name().toLowerCase(Locale.ROOT)
+                    .replace('_', '-') + " layout has at most " + maxBands + " bands: " + numBands);
+        }
+        double[] low = new double[numBands];
+        double[] high = new double[numBands];
+        switch (scale) {
+            case CLASSIC:
+                return new BandLayout(Constants.bandFreqLow(numBands),
+                        Constants.bandFreqHigh(numBands));
+            case THIRD_OCTAVE:
+                // Base-two series of IEC 61260: centres 1 kHz * 2^(k/3), edges a sixth octave off
+                long first = thirdOctaveIndex(minFreq);
+                for (int b = 0; b < numBands; b++) {
+                    double centre = 1000 * Math.pow(2, (first + b) / 3.0);
+                    low[b] = centre * Math.pow(2, -1.0 / 6);
+                    high[b] = centre * Math.pow(2, 1.0 / 6);
+                }
+                break;
+            default:
+                double from = toScale(scale, minFreq);
+                double step = (toScale(scale, maxFreq) - from) / numBands;
+                for (int b = 0; b < numBands; b++) {
+                    low[b] = b == 0 ? minFreq : high[b - 1];
+                    high[b] = b == numBands - 1 ? maxFreq : fromScale(scale, from + (b + 1) * step);
+                }
+                break;
+        }
+        return new BandLayout(low, high);
+    }
+
+    // Index k of the third-octave band centred nearest hz
+    private static long thirdOctaveIndex(double hz) {
+        return Math.round(3 * Math.log(hz / 1000) / Math.log(2));
+    }
+
+    private static double toScale(Scale scale, double hz) {
+        switch (scale) {
+            case MEL:
+                return 2595 * Math.log10(1 + hz / 700);
+            case BARK:
+                // Traunmueller's approximation
+                return 26.81 * hz / (1960 + hz) - 0.53;
+            default:
+                return Math.log(hz);
+        }
+    }
+
+    private static double fromScale(Scale scale, double value) {
+        switch (scale) {
+            case MEL:
+                return 700 * (Math.pow(10, value / 2595) - 1);
+            case BARK:
+                return 1960 * (value + 0.53) / (26.28 - value);
+            default:
+                return Math.exp(value);
+        }
+    }
+
+    public int getNumBands() {
+        return low.length;
+    }
+
+    public double[] getBandFreqLow() {
+        return low.clone();
+    }
+
+    public double[] getBandFreqHigh() {
+        return high.clone();
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Maps an FFT magnitude spectrum onto frequency bands.
+ * The band layout is precomputed once for a sample rate and FFT size as a sparse filterbank
+ * matrix: every band is a row holding the weights of the contiguous bins it overlaps, stored back
+ * to back, so {@link #map} costs one multiply-add per non-zero weight, not bands times bins, and
+ * scales to hundreds of bands. Bin {@code i} is treated as covering {@code [i - 0.5, i + 0.5)} bin
+ * widths around its centre frequency, so a band edge that falls inside a bin only takes that bin's
+ * overlapping share; weights are normalized so each band reports its RMS level.
+ */
+public class BandMapper {
+
+    private static final SpectralKernels KERNELS = SpectralKernels.get();
+
+    private final int numBands;
+    private final int binCount;
+    // Row b covers bins firstBin[b] .. firstBin[b] + rowStart[b + 1] - rowStart[b] - 1 with
+    // weights[rowStart[b] ..]
+    private final int[] firstBin;
+    private final int[] rowStart;
+    private final double[] weights;
+
+    public BandMapper(float sampleRate, int fftSize, double[] bandFreqLow, double[] bandFreqHigh) {
+        this.numBands = bandFreqLow.length;
+        this.binCount = fftSize / 2;
+        this.firstBin = new int[numBands];
+        this.rowStart = new int[numBands + 1];
+
+        double freqResolution = sampleRate / fftSize;
+        double[] lows = new double[numBands];
+        double[] highs = new double[numBands];
+        int nonZero = 0;
+        for (int b = 0; b < numBands; b++) {
+            double low = Math.max(0, bandFreqLow[b] / freqResolution);
+            double high = Math.min(binCount - 0.5, bandFreqHigh[b] / freqResolution);
+            lows[b] = low;
+            highs[b] = high;
+            rowStart[b] = nonZero;
+            if (high <= low) {
+                // Band lies above Nyquist (or is empty); an empty row always reads as silent.
+                continue;
+            }
+            int first = Math.min(binCount - 1, (int) Math.floor(low + 0.5));
+            int last = Math.min(binCount - 1, (int) Math.floor(high + 0.5));
+            firstBin[b] = first;
+            nonZero += last - first + 1;
+        }
+        rowStart[numBands] = nonZero;
+
+        this.weights = new double[nonZero];
+        for (int b = 0; b < numBands; b++) {
+            int first = firstBin[b];
+            int offset = rowStart[b];
+            int count = rowStart[b + 1] - offset;
+            double total = 0;
+            for (int k = 0; k < count; k++) {
+                int i = first + k;
+                double w = Math.max(0, Math.min(highs[b], i + 0.5) - Math.max(lows[b], i - 0.5));
+                weights[offset + k] = w;
+                total += w;
+            }
+            for (int k = 0; k < count; k++) {
+                weights[offset + k] = total > 0 ? weights[offset + k] / total : 0;
+            }
+        }
+    }
+
+    public int getNumBands() {
+        return numBands;
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    /**
+     * Number of stored filterbank weights, i.e. multiply-adds per {@link #map}.
+     */
+    public int getNonZeroCount() {
+        return weights.length;
+    }
+
+    /**
+     * Writes the RMS level of each band of {@code magnitudes} into {@code out}.
+     */
+    public void map(double[] magnitudes, double[] out) {
+        map(magnitudes, out, 0);
+    }
+
+    /**
+     * Writes the band levels into {@code out[offset, offset + numBands)}, e.g. one strip of a
+     * multi-channel frame.
+     */
+    public void map(double[] magnitudes, double[] out, int offset) {
+        for (int b = 0; b < numBands; b++) {
+            int start = rowStart[b];
+            out[offset + b] = Math.sqrt(KERNELS.weightedSumOfSquares(magnitudes, firstBin[b],
+                    weights, start, rowStart[b + 1] - start));
+        }
+    }
+}
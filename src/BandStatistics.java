@@ -0,0 +1,76 @@
+/**
+ * Running per-band minimum, maximum and quantile estimates in constant memory.
+ * Each band tracks the configured quantiles with a {@link P2Quantile}; nothing per frame is
+ * retained. Not thread-safe: feed it from a single thread.
+ */
+public class BandStatistics {
+
+    private final int numBands;
+    private final double[] quantiles;
+    private final P2Quantile[][] estimators;
+    private final double[] min;
+    private final double[] max;
+
+    public BandStatistics(int numBands, double... quantiles) {
+        this.numBands = numBands;
+        this.quantiles = quantiles.clone();
+        this.estimators = new P2Quantile[numBands][quantiles.length];
+        this.min = new double[numBands];
+        this.max = new double[numBands];
+        for (int b = 0; b < numBands; b++) {
+            for (int q = 0; q < quantiles.length; q++) {
+                estimators[b][q] = new P2Quantile(quantiles[q]);
+            }
+        }
+        reset();
+    }
+
+    public void add(double[] volumes) {
+        for (int b = 0; b < numBands; b++) {
+            double v = volumes[b];
+            if (v < min[b]) min[b] = v;
+            if (v > max[b]) max[b] = v;
+            P2Quantile[] band = estimators[b];
+            for (int q = 0; q < band.length; q++) {
+                band[q].add(v);
+            }
+        }
+    }
+
+    public int getNumBands() {
+        return numBands;
+    }
+
+    public double[] getQuantiles() {
+        return quantiles.clone();
+    }
+
+    public long getCount() {
+        return numBands == 0 || quantiles.length == 0 ? 0 : estimators[0][0].getCount();
+    }
+
+    public double getMin(int band) {
+        return min[band];
+    }
+
+    public double getMax(int band) {
+        return max[band];
+    }
+
+    /**
+     * Estimate of the {@code quantileIndex}-th configured quantile for {@code band}.
+     */
+    public double getQuantile(int band, int quantileIndex) {
+        return estimators[band][quantileIndex].estimate();
+    }
+
+    public void reset() {
+        for (int b = 0; b < numBands; b++) {
+            min[b] = Double.MAX_VALUE;
+            max[b] = -Double.MAX_VALUE;
+            for (P2Quantile estimator : estimators[b]) {
+                estimator.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A live stream of PCM the visualizer follows as it arrives: a sound card input line
+ * ({@link LiveInput}) or raw PCM from another process ({@link PcmChannelInput}).
+ */
+public interface CaptureSource {
+
+    AudioFormat getFormat();
+
+    /**
+     * Estimated {@link System#nanoTime()} at which the newest sample of the last chunk read was
+     * captured.
+     */
+    long captureNanos();
+
+    /**
+     * One line on format, buffering and losses, for the metrics summary.
+     */
+    String describe();
+}
@@ -0,0 +1,160 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Allocation-free carpet renderer that computes every pixel arithmetically.
+ * Instead of recursing through {@code Graphics.fillRect}, each pixel walks the base-3 digits of
+ * its position: at every level it is either in the centre cell (painted with that level's square
+ * colour), in the strip left over by integer division, or in one of the eight outer cells, which
+ * is where the next level continues. Sizes are divided with the same integer truncation as
+ * {@link FractalGenerator}, so the layout is pixel-identical to the Java2D renderer. The random
+ * per-square fill colours are drawn from the precomputed background palette using a hash of the
+ * square's position instead of {@code Math.random()}.
+ * Rows can be split across a fork-join pool for large tiles.
+ */
+public class CarpetRasterizer implements CarpetRenderer {
+
+    private static final int MIN_ROWS_PER_TASK = 32;
+
+    private final ForkJoinPool pool;
+    private final int[] palette;
+    private final int[] squarePalette;
+
+    /**
+     * Single-threaded rasterizer.
+     */
+    public CarpetRasterizer() {
+        this(null);
+    }
+
+    /**
+     * Rasterizer that splits rows across {@code pool}, or renders on the caller if {@code null}.
+     */
+    public CarpetRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+        palette = new int[FractalGenerator.paletteSize()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = FractalGenerator.backgroundRgb(i);
+        }
+        squarePalette = new int[8];
+        for (int i = 0; i < squarePalette.length; i++) {
+            squarePalette[i] = FractalGenerator.squareRgb(i);
+        }
+    }
+
+    @Override
+    public BufferedImage render(int depth, int width, int height, int bandIndex) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        renderInto(depth, bandIndex, image);
+        return image;
+    }
+
+    /**
+     * Renders into an existing {@code TYPE_INT_ARGB} or {@code TYPE_INT_RGB} image, overwriting
+     * every pixel.
+     */
+    public void renderInto(int depth, int bandIndex, BufferedImage target) {
+        int type = target.getType();
+        if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("Unsupported image type: " + type);
+        }
+        int[] pixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        int width = target.getWidth();
+        int height = target.getHeight();
+        depth = FractalGenerator.visibleDepth(depth, width);
+        int background = palette[FractalGenerator.colorSlot(depth, bandIndex)];
+
+        if (pool == null || height < 2 * MIN_ROWS_PER_TASK) {
+            renderRows(pixels, width, depth, background, 0, height);
+        } else {
+            pool.invoke(new RowTask(pixels, width, depth, background, 0, height));
+        }
+    }
+
+    private final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] pixels;
+        private final int width;
+        private final int depth;
+        private final int background;
+        private final int fromRow;
+        private final int toRow;
+
+        RowTask(int[] pixels, int width, int depth, int background, int fromRow, int toRow) {
+            this.pixels = pixels;
+            this.width = width;
+            this.depth = depth;
+            this.background = background;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= MIN_ROWS_PER_TASK) {
+                renderRows(pixels, width, depth, background, fromRow, toRow);
+                return;
+            }
+            int mid = (fromRow + toRow) >>> 1;
+            invokeAll(new RowTask(pixels, width, depth, background, fromRow, mid),
+                    new RowTask(pixels, width, depth, background, mid, toRow));
+        }
+    }
+
+    private void renderRows(int[] pixels, int width, int depth, int background, int fromRow,
+                            int toRow) {
+        // The carpet is a width x width square anchored at the top-left, like the Java2D path.
+        int carpetRows = depth > 0 ? Math.min(toRow, width) : fromRow;
+        int y = fromRow;
+        for (; y < carpetRows; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[row + x] = carpetPixel(x, y, width, depth);
+            }
+        }
+        for (; y < toRow; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[row + x] = background;
+            }
+        }
+    }
+
+    private int carpetPixel(int x, int y, int size, int depth) {
+        int square = 1;
+        for (int level = 0; level < depth; level++) {
+            int color = palette[mix(square, level) % palette.length];
+            int cell = size / 3;
+            if (cell == 0) {
+                return color;
+            }
+            int cx = x / cell;
+            int cy = y / cell;
+            if (cx > 2 || cy > 2) {
+                // Strip left uncovered by integer division keeps this level's fill.
+                return color;
+            }
+            if (cx == 1 && cy == 1) {
+                return squarePalette[level % squarePalette.length];
+            }
+            if (level == depth - 1) {
+                return color;
+            }
+            x -= cx * cell;
+            y -= cy * cell;
+            size = cell;
+            square = square * 9 + cx * 3 + cy;
+        }
+        return palette[0];
+    }
+
+    private static int mix(int square, int level) {
+        int h = square * 0x9E3779B1 + level * 0x85EBCA77;
+        h ^= h >>> 15;
+        h *= 0x2C1B3C6D;
+        h ^= h >>> 12;
+        return h & 0x7FFFFFFF;
+    }
+}
@@ -0,0 +1,9 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders the Sierpinski carpet tile for one band at a given depth.
+ */
+public interface CarpetRenderer {
+
+    BufferedImage render(int depth, int width, int height, int bandIndex);
+}
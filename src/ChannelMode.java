@@ -0,0 +1,28 @@
+/**
+ * How the channels of the analysed sources map onto fractal strips.
+ */
+public enum ChannelMode {
+    /** One strip per source, analysing the downmix of its channels. */
+    MIX,
+    /** One strip per channel of every source, e.g. left and right of a stereo file. */
+    SEPARATE;
+
+    /**
+     * Strip index of every channel of the combined stream, given the channel count of each
+     * source in order.
+     */
+    public int[] stripOfChannel(int[] channelsPerSource) {
+        int total = 0;
+        for (int channels : channelsPerSource) {
+            total += channels;
+        }
+        int[] strips = new int[total];
+        int channel = 0;
+        for (int source = 0; source < channelsPerSource.length; source++) {
+            for (int c = 0; c < channelsPerSource[source]; c++, channel++) {
+                strips[channel] = this == MIX ? source : channel;
+            }
+        }
+        return strips;
+    }
+}
@@ -1,8 +1,27 @@
 public class Constants {
     public static final int BUFFER_SIZE = 4096;
-    private static int numBands = 1;
-    private static double[] bandFreqLow;
-    private static double[] bandFreqHigh;
+    // Memory budget for cached fractal tiles (bytes of ARGB pixel data)
+    public static final long TILE_CACHE_BYTES = 64L * 1024 * 1024;
+    // Default short-time Fourier transform: window length and hop in samples
+    public static final int DEFAULT_FFT_SIZE = 4096;
+    public static final int DEFAULT_HOP_SIZE = 1024;
+    // Live capture latency the input line buffer and read size are sized for
+    public static final double DEFAULT_TARGET_LATENCY_MILLIS = 30;
+    // Frame rate the visualizer degrades detail to hold
+    public static final double DEFAULT_TARGET_FRAME_RATE = 30;
+    // Decode lookahead for file playback and preprocessing: blocks of PREFETCH_BLOCK_BYTES each
+    public static final int PREFETCH_BLOCKS = 4;
+    public static final int PREFETCH_BLOCK_BYTES = 64 * 1024;
+    // Chunks of BUFFER_SIZE buffered between a raw PCM input and the visualizer
+    public static final int PCM_INPUT_CHUNKS = 16;
+    // Largest decoded file kept from preprocessing for playback instead of decoding it again
+    public static final long SHARED_DECODE_BYTES = 128L * 1024 * 1024;
+    // Largest band count the built-in layout provides
+    public static final int MAX_BANDS = 20;
+    // Largest band count offered for generated layouts, and the range they cover by default
+    public static final int MAX_GENERATED_BANDS = 256;
+    public static final double BAND_MIN_FREQ = 20;
+    public static final double BAND_MAX_FREQ = 20000;
 
     // Original frequency ranges for 20 bands
     private static final double[] ORIGINAL_BAND_FREQ_LOW = {
@@ -16,24 +35,21 @@ public class Constants {
         15000, 20000
     };
 
-    public static void setNumBands(int n) {
-        numBands = n;
-        // Initialize band frequencies based on selected number of bands
-        bandFreqLow = new double[numBands];
-        bandFreqHigh = new double[numBands];
-        System.arraycopy(ORIGINAL_BAND_FREQ_LOW, 0, bandFreqLow, 0, numBands);
-        System.arraycopy(ORIGINAL_BAND_FREQ_HIGH, 0, bandFreqHigh, 0, numBands);
+    /**
+     * Low edges of the first {@code numBands} bands of the built-in layout. Returns a new array.
+     */
+    public static double[] bandFreqLow(int numBands) {
+        double[] low = new double[numBands];
+        System.arraycopy(ORIGINAL_BAND_FREQ_LOW, 0, low, 0, numBands);
+        return low;
     }
 
-    public static int getNumBands() {
-        return numBands;
-    }
-
-    public static double[] getBandFreqLow() {
-        return bandFreqLow;
-    }
-
-    public static double[] getBandFreqHigh() {
-        return bandFreqHigh;
+    /**
+     * High edges of the first {@code numBands} bands of the built-in layout. Returns a new array.
+     */
+    public static double[] bandFreqHigh(int numBands) {
+        double[] high = new double[numBands];
+        System.arraycopy(ORIGINAL_BAND_FREQ_HIGH, 0, high, 0, numBands);
+        return high;
     }
 }
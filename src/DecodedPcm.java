@@ -0,0 +1,130 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The decoded PCM of one file, recorded while the preprocessing pass reads it so that playback
+ * replays it from memory instead of decoding the file a second time. Recording stops and drops
+ * what it has once the size limit is exceeded. A recording is only reused for the same file,
+ * unchanged since it was recorded.
+ */
+public class DecodedPcm {
+
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    private final File file;
+    private final long lastModified;
+    private final long fileLength;
+    private final AudioFormat format;
+    private final long limit;
+    // Whole frames per block, so replayed reads never split a frame
+    private final int blockBytes;
+    private final List<byte[]> blocks = new ArrayList<>();
+    private long length;
+    private boolean overflowed;
+
+    public DecodedPcm(File file, AudioFormat format, long limit) {
+        this.file = file.getAbsoluteFile();
+        this.lastModified = file.lastModified();
+        this.fileLength = file.length();
+        this.format = format;
+        this.limit = limit;
+        int frameSize = Math.max(1, format.getFrameSize());
+        this.blockBytes = BLOCK_BYTES - BLOCK_BYTES % frameSize;
+    }
+
+    public void append(byte[] buffer, int offset, int count) {
+        if (overflowed) {
+            return;
+        }
+        if (length + count > limit) {
+            overflowed = true;
+            blocks.clear();
+            return;
+        }
+        while (count > 0) {
+            int inBlock = (int) (length % blockBytes);
+            if (inBlock == 0) {
+                blocks.add(new byte[blockBytes]);
+            }
+            int n = Math.min(count, blockBytes - inBlock);
+            System.arraycopy(buffer, offset, blocks.get(blocks.size() - 1), inBlock, n);
+            offset += n;
+            count -= n;
+            length += n;
+        }
+    }
+
+    /**
+     * Whether everything appended so far was kept.
+     */
+    public boolean isComplete() {
+        return !overflowed;
+    }
+
+    /**
+     * Whether this is a recording of {@code file} in its current state.
+     */
+    public boolean matches(File file) {
+        return file.getAbsoluteFile().equals(this.file) && file.lastModified() == lastModified
+                && file.length() == fileLength;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * A new stream over the recorded PCM.
+     */
+    public AudioInputStream openStream() {
+        return openStream(0);
+    }
+
+    /**
+     * A new stream over the recorded PCM from sample frame {@code frame} on.
+     */
+    public AudioInputStream openStream(long frame) {
+        long frames = length / format.getFrameSize();
+        long start = Math.max(0, Math.min(frames, frame));
+        return new AudioInputStream(new Replay(start * format.getFrameSize()), format,
+                frames - start);
+    }
+
+    private final class Replay extends InputStream {
+        private long position;
+
+        Replay(long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            int value = blocks.get((int) (position / blockBytes))[(int) (position % blockBytes)];
+            position++;
+            return value & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length) {
+                return -1;
+            }
+            int inBlock = (int) (position % blockBytes);
+            int n = (int) Math.min(Math.min(len, blockBytes - inBlock), length - position);
+            System.arraycopy(blocks.get((int) (position / blockBytes)), inBlock, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+}
@@ -1,79 +1,165 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Real-input FFT plan for a fixed power-of-two transform size.
+ * Twiddle factors and the bit-reversal permutation are computed once per size and shared between
+ * plans; each plan owns its own work buffers, so a single instance must not be used from more than
+ * one thread at a time. The N real samples are packed into an N/2 point complex transform and
+ * split afterwards, which halves the butterfly work compared to a full complex FFT. The butterfly
+ * and split loops run on the {@link SpectralKernels} selected for this JVM.
+ */
 public class FFT {
 
-    public static double[] computeFFT(double[] samples) {
-        int n = samples.length;
-        int m = 1;
-        while (m < n) {
-            m <<= 1;
+    private static final ConcurrentHashMap<Integer, Tables> TABLES = new ConcurrentHashMap<>();
+    private static final SpectralKernels KERNELS = SpectralKernels.get();
+
+    private final int size;
+    private final int half;
+    private final Tables tables;
+    private final double[] real;
+    private final double[] imag;
+
+    public FFT(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 2: " + size);
         }
+        this.size = size;
+        this.half = size / 2;
+        this.tables = TABLES.computeIfAbsent(size, Tables::new);
+        this.real = new double[half];
+        this.imag = new double[half];
+    }
 
-        double[] real = new double[m];
-        double[] imag = new double[m];
+    public int getSize() {
+        return size;
+    }
 
-        System.arraycopy(samples, 0, real, 0, n);
+    /**
+     * Number of magnitude bins produced by {@link #magnitudes}.
+     */
+    public int getBinCount() {
+        return half;
+    }
 
-        fft(real, imag);
+    /**
+     * Transforms the first {@code count} samples (zero padded up to the plan size) and writes the
+     * first N/2 bin magnitudes into {@code magnitudes}.
+     */
+    public void magnitudes(double[] samples, int count, double[] magnitudes) {
+        if (count > size) {
+            count = size;
+        }
+        double[] re = real;
+        double[] im = imag;
 
-        double[] magnitudes = new double[m / 2];
-        for (int i = 0; i < m / 2; i++) {
-            magnitudes[i] = Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+        int pairs = count >> 1;
+        for (int k = 0; k < pairs; k++) {
+            re[k] = samples[2 * k];
+            im[k] = samples[2 * k + 1];
+        }
+        int k = pairs;
+        if ((count & 1) != 0) {
+            re[k] = samples[count - 1];
+            im[k] = 0;
+            k++;
+        }
+        for (; k < half; k++) {
+            re[k] = 0;
+            im[k] = 0;
         }
 
-        return magnitudes;
+        transform(re, im);
+
+        // Split the packed spectrum back into the spectrum of the real input.
+        magnitudes[0] = Math.abs(re[0] + im[0]);
+        KERNELS.splitMagnitudes(re, im, half, tables.splitCos, tables.splitSin, magnitudes);
     }
 
-    private static void fft(double[] real, double[] imag) {
-        int n = real.length;
-        int bits = (int) (Math.log(n) / Math.log(2));
-
-        for (int j = 1; j < n / 2; j++) {
-            int swapPos = bitReverse(j, bits);
-            if (swapPos > j) {
-                double temp = real[j];
-                real[j] = real[swapPos];
-                real[swapPos] = temp;
-                temp = imag[j];
-                imag[j] = imag[swapPos];
-                imag[swapPos] = temp;
-            }
+    private void transform(double[] re, double[] im) {
+        int[] swaps = tables.swaps;
+        for (int s = 0; s < swaps.length; s += 2) {
+            int a = swaps[s];
+            int b = swaps[s + 1];
+            double temp = re[a];
+            re[a] = re[b];
+            re[b] = temp;
+            temp = im[a];
+            im[a] = im[b];
+            im[b] = temp;
         }
 
-        for (int size = 2; size <= n; size *= 2) {
-            double angle = -2 * Math.PI / size;
-            double wRealInit = Math.cos(angle);
-            double wImagInit = Math.sin(angle);
-
-            for (int m = 0; m < n; m += size) {
-                double wReal = 1;
-                double wImag = 0;
+        KERNELS.butterflies(re, im, half, tables.stageCos, tables.stageSin);
+    }
 
-                for (int k = 0; k < size / 2; k++) {
-                    int i = m + k;
-                    int j = i + size / 2;
+    /**
+     * Convenience wrapper that allocates its own plan and output. Prefer holding an {@link FFT}
+     * instance on hot paths.
+     */
+    public static double[] computeFFT(double[] samples) {
+        FFT fft = new FFT(sizeFor(samples.length));
+        double[] magnitudes = new double[fft.getBinCount()];
+        fft.magnitudes(samples, samples.length, magnitudes);
+        return magnitudes;
+    }
 
-                    double tempReal = wReal * real[j] - wImag * imag[j];
-                    double tempImag = wReal * imag[j] + wImag * real[j];
+    /**
+     * Smallest power-of-two transform size that holds {@code samples} samples.
+     */
+    public static int sizeFor(int samples) {
+        int m = 2;
+        while (m < samples) {
+            m <<= 1;
+        }
+        return m;
+    }
 
-                    real[j] = real[i] - tempReal;
-                    imag[j] = imag[i] - tempImag;
+    private static final class Tables {
+        // Twiddles of the stage with half-block size h at [h, 2h), contiguous for the kernels
+        final double[] stageCos;
+        final double[] stageSin;
+        final double[] splitCos;
+        final double[] splitSin;
+        final int[] swaps;
+
+        Tables(int size) {
+            int n = size / 2;
+            double[] cos = new double[Math.max(1, n / 2)];
+            double[] sin = new double[cos.length];
+            for (int t = 0; t < n / 2; t++) {
+                double angle = -2 * Math.PI * t / n;
+                cos[t] = Math.cos(angle);
+                sin[t] = Math.sin(angle);
+            }
+            stageCos = new double[n];
+            stageSin = new double[n];
+            for (int halfBlock = 1; halfBlock < n; halfBlock <<= 1) {
+                int stride = n / (halfBlock << 1);
+                for (int k = 0; k < halfBlock; k++) {
+                    stageCos[halfBlock + k] = cos[k * stride];
+                    stageSin[halfBlock + k] = sin[k * stride];
+                }
+            }
 
-                    real[i] += tempReal;
-                    imag[i] += tempImag;
+            splitCos = new double[n];
+            splitSin = new double[n];
+            for (int k = 0; k < n; k++) {
+                double angle = -2 * Math.PI * k / size;
+                splitCos[k] = Math.cos(angle);
+                splitSin[k] = Math.sin(angle);
+            }
 
-                    double tempWReal = wReal * wRealInit - wImag * wImagInit;
-                    wImag = wReal * wImagInit + wImag * wRealInit;
-                    wReal = tempWReal;
+            int bits = Integer.numberOfTrailingZeros(n);
+            int count = 0;
+            int[] pairs = new int[n];
+            for (int j = 1; j < n; j++) {
+                int swapPos = Integer.reverse(j) >>> (32 - bits);
+                if (bits > 0 && swapPos > j) {
+                    pairs[count++] = j;
+                    pairs[count++] = swapPos;
                 }
             }
+            swaps = new int[count];
+            System.arraycopy(pairs, 0, swaps, 0, count);
         }
     }
-
-    private static int bitReverse(int n, int bits) {
-        int reversedN = 0;
-        for (int i = 0; i < bits; i++) {
-            reversedN = (reversedN << 1) | (n & 1);
-            n >>= 1;
-        }
-        return reversedN;
-    }
 }
@@ -16,10 +16,10 @@ public class FractalGenerator {
 
     public static BufferedImage generateFractalImage(int depth, int width, int height,
                                                      int bandIndex) {
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        depth = visibleDepth(depth, width);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = image.createGraphics();
-        int colorIndex = (depth + bandIndex) % backgroundColors.length;
-        Color randomColor = backgroundColors[colorIndex];
+        Color randomColor = backgroundColors[colorSlot(depth, bandIndex)];
         g2d.setColor(randomColor);
         g2d.fillRect(0, 0, width, height);
         drawCarpet(g2d, 0, 0, width, depth, depth);
@@ -27,6 +27,38 @@ public class FractalGenerator {
         return image;
     }
 
+    /**
+     * {@code depth}, capped at the deepest level whose squares are still at least a pixel wide on
+     * a carpet {@code size} pixels across. A depth-8 carpet needs 6561 pixels; on a 100-pixel tile
+     * levels past 4 only add sub-pixel work.
+     */
+    public static int visibleDepth(int depth, int size) {
+        int visible = 0;
+        for (int cell = size / 3; cell > 0 && visible < depth; cell /= 3) {
+            visible++;
+        }
+        return visible;
+    }
+
+    /**
+     * Index of the background colour used for a band at the given depth.
+     */
+    public static int colorSlot(int depth, int bandIndex) {
+        return (depth + bandIndex) % backgroundColors.length;
+    }
+
+    static int backgroundRgb(int slot) {
+        return backgroundColors[slot].getRGB();
+    }
+
+    static int squareRgb(int level) {
+        return squareColors[level % squareColors.length].getRGB();
+    }
+
+    static int paletteSize() {
+        return backgroundColors.length;
+    }
+
     private static void drawCarpet(Graphics g, int x, int y, int size, int depth, int maxDepth) {
         if (depth == 0) {
             return;
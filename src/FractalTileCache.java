@@ -0,0 +1,153 @@
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of rendered carpet tiles keyed by depth, colour slot and tile size.
+ * Depth only takes a handful of values, so after warm-up a band update is a lookup rather than a
+ * full redraw. Entries are evicted least-recently-used first once their combined pixel memory
+ * exceeds the configured budget. Tiles are stored opaque, in the format of the screen they are
+ * shown on when one is set.
+ */
+public class FractalTileCache {
+
+    private static final class Key {
+        final int depth;
+        final int colorSlot;
+        final int width;
+        final int height;
+
+        Key(int depth, int colorSlot, int width, int height) {
+            this.depth = depth;
+            this.colorSlot = colorSlot;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return depth == k.depth && colorSlot == k.colorSlot && width == k.width
+                    && height == k.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((depth * 31 + colorSlot) * 31 + width) * 31 + height;
+        }
+    }
+
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final long budgetBytes;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private GraphicsConfiguration graphicsConfiguration;
+    // Incremented by clear(), so tiles rendered before it are not stored
+    private long generation;
+    private final CarpetRenderer renderer;
+
+    /**
+     * @param renderer renders tiles on a miss, e.g. {@code FractalGenerator::generateFractalImage}
+     *                 or a {@link CarpetRasterizer}
+     */
+    public FractalTileCache(long budgetBytes, CarpetRenderer renderer) {
+        this.budgetBytes = budgetBytes;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Returns the tile for the given band state, rendering and caching it on a miss. Depths past
+     * what the tile width can show share one tile. Tiles are rendered outside the lock, so misses
+     * on several threads render in parallel and never hold up {@link #clear()}; if two threads
+     * render the same tile, the first one stored is kept.
+     */
+    public BufferedImage get(int depth, int bandIndex, int width, int height) {
+        depth = FractalGenerator.visibleDepth(depth, width);
+        Key key = new Key(depth, FractalGenerator.colorSlot(depth, bandIndex), width, height);
+        GraphicsConfiguration config;
+        long expectedGeneration;
+        synchronized (this) {
+            BufferedImage image = tiles.get(key);
+            if (image != null) {
+                hits++;
+                return image;
+            }
+            misses++;
+            config = graphicsConfiguration;
+            expectedGeneration = generation;
+        }
+        BufferedImage rendered = TileCompositor.toCompatible(
+                renderer.render(depth, width, height, bandIndex), config);
+        synchronized (this) {
+            // A tile rendered before the cache was cleared may be in the old screen format.
+            if (generation != expectedGeneration) {
+                return rendered;
+            }
+            BufferedImage image = tiles.get(key);
+            if (image != null) {
+                return image;
+            }
+            tiles.put(key, rendered);
+            usedBytes += sizeOf(rendered);
+            evict();
+            return rendered;
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+        // Always keep the most recent entry, even if it alone exceeds the budget.
+        while (usedBytes > budgetBytes && tiles.size() > 1 && it.hasNext()) {
+            usedBytes -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    /**
+     * Screen whose native pixel format new tiles are converted to, or {@code null} for
+     * {@code TYPE_INT_RGB}. Changing it drops every cached tile.
+     */
+    public synchronized void setGraphicsConfiguration(GraphicsConfiguration config) {
+        if (config != graphicsConfiguration) {
+            graphicsConfiguration = config;
+            clear();
+        }
+    }
+
+    /**
+     * Drops every cached tile, e.g. after the panel has been resized.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        usedBytes = 0;
+        generation++;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
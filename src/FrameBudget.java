@@ -0,0 +1,132 @@
+import java.util.Locale;
+
+/**
+ * Holds the visualizer to a target frame rate by trading detail for time. Frame costs are
+ * measured on both sides of the display, tile production on the publishing thread and painting
+ * on the event dispatch thread, and smoothed separately; since the two run in parallel, the
+ * slower one decides whether a frame fits the budget. When it does not, the degradation level
+ * rises one step at a time, and it falls again once frames take well under the budget:
+ * <ol start="0">
+ *     <li>full detail</li>
+ *     <li>carpets one level shallower</li>
+ *     <li>carpets two levels shallower</li>
+ *     <li>additionally only half of the bands updated per frame, alternating</li>
+ *     <li>additionally frames published at half the target rate</li>
+ * </ol>
+ * Levels change at most once per {@link #SETTLE_NANOS}, so every step is measured before the next.
+ * Thread-safe.
+ */
+public class FrameBudget {
+
+    public static final int MAX_LEVEL = 4;
+    // Time a level is kept before it may change again
+    static final long SETTLE_NANOS = 500_000_000L;
+    // Frames this much under budget may step back up to more detail
+    private static final double RECOVER_LOAD = 0.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final long budgetNanos;
+    private double publishNanos;
+    private double paintNanos;
+    private int level;
+    private long changedNanos = System.nanoTime();
+    private long levelChanges;
+
+    /**
+     * @param targetFrameRate frames per second to hold; 0 or less never degrades
+     */
+    public FrameBudget(double targetFrameRate) {
+        this.budgetNanos = targetFrameRate > 0 ? (long) (1e9 / targetFrameRate) : 0;
+    }
+
+    /**
+     * Records the time spent producing the tiles of one published frame.
+     */
+    public synchronized void recordPublish(long nanos) {
+        publishNanos = publishNanos == 0 ? nanos
+                : SMOOTHING * nanos + (1 - SMOOTHING) * publishNanos;
+        adjust();
+    }
+
+    /**
+     * Records the time one paint of the panel took.
+     */
+    public synchronized void recordPaint(long nanos) {
+        paintNanos = paintNanos == 0 ? nanos : SMOOTHING * nanos + (1 - SMOOTHING) * paintNanos;
+        adjust();
+    }
+
+    private void adjust() {
+        if (budgetNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - changedNanos < SETTLE_NANOS) {
+            return;
+        }
+        double load = getLoad();
+        int next = level;
+        if (load > 1 && level < MAX_LEVEL) {
+            next = level + 1;
+        } else if (load < RECOVER_LOAD && level > 0) {
+            next = level - 1;
+        }
+        if (next != level) {
+            level = next;
+            changedNanos = now;
+            levelChanges++;
+            // Costs measured at the old level say little about the new one.
+            publishNanos = 0;
+            paintNanos = 0;
+        }
+    }
+
+    /**
+     * Smoothed cost of the slower side as a fraction of the frame budget.
+     */
+    public synchronized double getLoad() {
+        return budgetNanos == 0 ? 0 : Math.max(publishNanos, paintNanos) / budgetNanos;
+    }
+
+    /**
+     * Current degradation level, 0 (full detail) to {@link #MAX_LEVEL}.
+     */
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public synchronized long getLevelChanges() {
+        return levelChanges;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Levels taken off every carpet at the current level.
+     */
+    public synchronized int getDepthReduction() {
+        return Math.min(level, 2);
+    }
+
+    /**
+     * Every how many frames each band is updated: 1, or 2 once bands are skipped.
+     */
+    public synchronized int getBandStride() {
+        return level >= 3 ? 2 : 1;
+    }
+
+    /**
+     * Shortest time between two published frames, 0 for no limit.
+     */
+    public synchronized long getMinFrameIntervalNanos() {
+        return level >= 4 ? budgetNanos * 2 : 0;
+    }
+
+    public synchronized String describe() {
+        return String.format(Locale.ROOT, "lod level=%d/%d publish=%.1fms paint=%.1fms"
+                        + " budget=%.1fms changes=%d", level, MAX_LEVEL, publishNanos / 1e6,
+                paintNanos / 1e6, budgetNanos / 1e6, levelChanges);
+    }
+}
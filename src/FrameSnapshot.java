@@ -0,0 +1,75 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Immutable state of one visualizer frame: the depth and tile of every band, all rendered for the
+ * same tile size. Snapshots are built off the event dispatch thread and published whole, so a
+ * reader always sees depths and tiles that belong together.
+ */
+public final class FrameSnapshot {
+
+    private final long sequence;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int[] depths;
+    private final BufferedImage[] tiles;
+    private final long captureNanos;
+
+    FrameSnapshot(long sequence, int tileWidth, int tileHeight, int[] depths,
+                  BufferedImage[] tiles, long captureNanos) {
+        this.sequence = sequence;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.depths = depths;
+        this.tiles = tiles;
+        this.captureNanos = captureNanos;
+    }
+
+    static FrameSnapshot empty(int numBands) {
+        return new FrameSnapshot(0, 0, 0, new int[numBands], new BufferedImage[numBands], 0);
+    }
+
+    /**
+     * Increases by one with every published frame.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the newest sample behind this frame was captured, or 0
+     * if unknown.
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    public int getNumBands() {
+        return depths.length;
+    }
+
+    public int getDepth(int bandIndex) {
+        return depths[bandIndex];
+    }
+
+    /**
+     * Tile of a band, or {@code null} if it has not been rendered at the current size yet.
+     */
+    public BufferedImage getTile(int bandIndex) {
+        return tiles[bandIndex];
+    }
+
+    /**
+     * Copies the depths of all bands into {@code out}.
+     */
+    public void getDepths(int[] out) {
+        System.arraycopy(depths, 0, out, 0, depths.length);
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for blocking audio I/O loops: virtual threads where the JVM provides them (Java 21+),
+ * named daemon platform threads otherwise. The virtual thread builder is looked up reflectively
+ * because the code base compiles for Java 8.
+ */
+public class IoThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final ThreadFactory virtualThreads;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public IoThreadFactory(String prefix) {
+        this.prefix = prefix;
+        this.virtualThreads = virtualThreadFactory(prefix);
+    }
+
+    private static ThreadFactory virtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class)
+                    .invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Older JVM, or virtual threads still a disabled preview feature
+            return null;
+        }
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        if (virtualThreads != null) {
+            return virtualThreads.newThread(task);
+        }
+        Thread thread = new Thread(task, prefix + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public boolean isVirtual() {
+        return virtualThreads != null;
+    }
+}
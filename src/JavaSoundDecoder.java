@@ -0,0 +1,79 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link AudioDecoder} over Java Sound: every format the installed {@code AudioFileReader}s
+ * understand, e.g. AU or mu-law and A-law WAV, and compressed formats if a Java Sound plugin for
+ * them is on the class path. Encodings {@link PcmDecoder} cannot read are converted to 16-bit
+ * signed PCM.
+ */
+public class JavaSoundDecoder implements AudioDecoder {
+
+    public static class Provider implements AudioDecoderProvider {
+        @Override
+        public AudioDecoder open(File file) throws IOException {
+            AudioInputStream stream;
+            try {
+                stream = AudioSystem.getAudioInputStream(file);
+            } catch (UnsupportedAudioFileException e) {
+                return null;
+            }
+            AudioInputStream pcm = toPcm(stream);
+            if (pcm == null) {
+                stream.close();
+                return null;
+            }
+            return new JavaSoundDecoder(pcm);
+        }
+    }
+
+    private final AudioInputStream stream;
+    private final int frameSize;
+
+    public JavaSoundDecoder(AudioInputStream stream) {
+        this.stream = stream;
+        this.frameSize = stream.getFormat().getFrameSize();
+    }
+
+    // 'stream' itself if it is decodable PCM, else a converting stream, or null if there is none.
+    private static AudioInputStream toPcm(AudioInputStream stream) {
+        AudioFormat format = stream.getFormat();
+        try {
+            new PcmDecoder(format);
+            return stream;
+        } catch (IllegalArgumentException e) {
+            // needs conversion
+        }
+        int channels = Math.max(1, format.getChannels());
+        AudioFormat target = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                format.getSampleRate(), 16, channels, 2 * channels, format.getSampleRate(), false);
+        if (!AudioSystem.isConversionSupported(target, format)) {
+            return null;
+        }
+        return AudioSystem.getAudioInputStream(target, stream);
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return stream.getFormat();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return stream.getFrameLength();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return stream.read(buffer, offset, length - length % frameSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
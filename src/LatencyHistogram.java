@@ -0,0 +1,111 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size log-linear latency histogram in the style of HdrHistogram: every power-of-two range
+ * of nanoseconds is split into 32 linear sub-buckets, giving about 3% relative precision from
+ * 1 ns up to several minutes. Recording is a couple of shifts and one counter update, never
+ * allocates, and is meant for a single writer thread; readers on other threads may see a
+ * recording in progress but never a corrupted count.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values up to 2^(SUB_BUCKET_BITS + RANGES - 1) ns, beyond that they are clamped
+    private static final int RANGES = 34;
+
+    private static final int BUCKETS = RANGES * SUB_BUCKETS;
+    // Summary slots after the buckets; ordered (lazySet) writes keep recording cheap
+    private static final int COUNT = BUCKETS;
+    private static final int TOTAL = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 3);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one duration in nanoseconds. Single writer only.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int index = Math.min(indexOf(nanos), BUCKETS - 1);
+        counts.lazySet(index, counts.get(index) + 1);
+        counts.lazySet(TOTAL, counts.get(TOTAL) + nanos);
+        if (nanos > counts.get(MAX)) {
+            counts.lazySet(MAX, nanos);
+        }
+        counts.lazySet(COUNT, counts.get(COUNT) + 1);
+    }
+
+    private static int indexOf(long value) {
+        int range = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int) (value >>> range) & (SUB_BUCKETS - 1);
+        // The first range holds 0..SUB_BUCKETS-1 exactly; later ones only use their upper half.
+        return range == 0 ? (int) value : (range * SUB_BUCKETS) + subBucket;
+    }
+
+    // Largest value that maps to the given bucket.
+    private static long highestValueAt(int index) {
+        int range = index / SUB_BUCKETS;
+        long subBucket = index % SUB_BUCKETS;
+        if (range == 0) {
+            return subBucket;
+        }
+        return ((subBucket + 1) << range) - 1;
+    }
+
+    public long getCount() {
+        return counts.get(COUNT);
+    }
+
+    public long getMax() {
+        return counts.get(MAX);
+    }
+
+    public double getMean() {
+        long n = counts.get(COUNT);
+        return n == 0 ? 0 : (double) counts.get(TOTAL) / n;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile (0-1), in nanoseconds.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long max = getMax();
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Clears all recorded values. Not atomic with respect to a concurrent writer.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import javax.sound.sampled.*;
+import java.util.Locale;
+
+/**
+ * An input line opened for low-latency capture. The capture format is negotiated with the mixer:
+ * the preferred format if the mixer supports it, otherwise the closest PCM format it advertises.
+ * Read size and line buffer are derived from a target latency: reads are at most half the target
+ * (and no longer than a hop, since depths change only once per hop), the buffer holds several reads
+ * so short stalls do not overrun it. A short read, e.g. when the line is stopped, returns only the
+ * whole frames actually read. If the reader falls behind by more than the target, the backlog is
+ * discarded so the visuals catch up with the sound instead of lagging for good. Used by one thread.
+ */
+public class LiveInput implements CaptureSource {
+
+    // Smallest read, in frames; below this the per-chunk overhead dominates
+    private static final int MIN_READ_FRAMES = 64;
+    private static final int READS_PER_BUFFER = 4;
+
+    private final TargetDataLine line;
+    private final AudioFormat format;
+    private final int frameSize;
+    private final double bytesPerNano;
+    private final int readBytes;
+    private final int backlogBytes;
+    private final byte[] discard;
+    private volatile long skippedFrames;
+
+    private LiveInput(TargetDataLine line, int readBytes, int backlogBytes) {
+        this.line = line;
+        this.format = line.getFormat();
+        this.frameSize = format.getFrameSize();
+        this.bytesPerNano = format.getFrameRate() * frameSize / 1e9;
+        this.readBytes = readBytes;
+        this.backlogBytes = backlogBytes;
+        this.discard = new byte[line.getBufferSize() - line.getBufferSize() % frameSize];
+    }
+
+    /**
+     * Opens, but does not start, an input line of {@code mixer} (the default input for
+     * {@code null}).
+     *
+     * @param preferred         format to use if supported; its sample rate and channel count also
+     *                          fill in what the mixer leaves unspecified
+     * @param targetLatencyMillis capture latency to aim for
+     * @param hopSize           STFT hop in frames; reads never exceed it
+     * @param maxReadBytes      largest read the consumer accepts
+     */
+    public static LiveInput open(Mixer.Info mixer, AudioFormat preferred,
+                                 double targetLatencyMillis, int hopSize, int maxReadBytes)
+            throws LineUnavailableException {
+        AudioFormat format = negotiate(mixer, preferred);
+        TargetDataLine line = mixer != null ? AudioSystem.getTargetDataLine(format, mixer)
+                : AudioSystem.getTargetDataLine(format);
+        return openLine(line, format, targetLatencyMillis, hopSize, maxReadBytes);
+    }
+
+    // Opens 'line' with a buffer and read size sized for the target latency.
+    static LiveInput openLine(TargetDataLine line, AudioFormat format, double targetLatencyMillis,
+                              int hopSize, int maxReadBytes) throws LineUnavailableException {
+        int frameSize = format.getFrameSize();
+        int targetFrames = (int) Math.max(1, format.getSampleRate() * targetLatencyMillis / 1000);
+        int readFrames = Math.max(MIN_READ_FRAMES, Math.min(targetFrames / 2, hopSize));
+        readFrames = Math.min(readFrames, maxReadBytes / frameSize);
+        int bufferFrames = Math.max(readFrames * READS_PER_BUFFER, targetFrames);
+        line.open(format, bufferFrames * frameSize);
+        // The line may round the buffer; never read more than half of what it granted.
+        int granted = line.getBufferSize() / frameSize;
+        readFrames = Math.max(1, Math.min(readFrames, granted / 2));
+        int backlogFrames = Math.max(targetFrames, readFrames * 2);
+        return new LiveInput(line, readFrames * frameSize, backlogFrames * frameSize);
+    }
+
+    /**
+     * The preferred format if {@code mixer} supports it, otherwise the supported PCM format closest
+     * to it: same sample rate first, then channel count, then sample size.
+     */
+    public static AudioFormat negotiate(Mixer.Info mixer, AudioFormat preferred)
+            throws LineUnavailableException {
+        DataLine.Info wanted = new DataLine.Info(TargetDataLine.class, preferred);
+        Line.Info[] lines;
+        if (mixer != null) {
+            Mixer device = AudioSystem.getMixer(mixer);
+            if (device.isLineSupported(wanted)) {
+                return preferred;
+            }
+            lines = device.getTargetLineInfo(new Line.Info(TargetDataLine.class));
+        } else {
+            if (AudioSystem.isLineSupported(wanted)) {
+                return preferred;
+            }
+            lines = AudioSystem.getTargetLineInfo(new Line.Info(TargetDataLine.class));
+        }
+        AudioFormat best = null;
+        int bestScore = -1;
+        for (Line.Info info : lines) {
+            if (!(info instanceof DataLine.Info)) {
+                continue;
+            }
+            for (AudioFormat advertised : ((DataLine.Info) info).getFormats()) {
+                AudioFormat candidate = concretize(advertised, preferred);
+                if (candidate == null) {
+                    continue;
+                }
+                int score = (candidate.getSampleRate() == preferred.getSampleRate() ? 4 : 0)
+                        + (candidate.getChannels() == preferred.getChannels() ? 2 : 0)
+                        + (candidate.getSampleSizeInBits() == preferred.getSampleSizeInBits()
+                                ? 1 : 0);
+                if (score > bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                }
+            }
+        }
+        if (best == null) {
+            throw new LineUnavailableException("No PCM capture format available for " + preferred);
+        }
+        return best;
+    }
+
+    // Fills in what the mixer leaves open; null if the format cannot be decoded.
+    private static AudioFormat concretize(AudioFormat advertised, AudioFormat preferred) {
+        float rate = advertised.getSampleRate() == AudioSystem.NOT_SPECIFIED
+                ? preferred.getSampleRate() : advertised.getSampleRate();
+        int channels = advertised.getChannels() == AudioSystem.NOT_SPECIFIED
+                ? preferred.getChannels() : advertised.getChannels();
+        int bits = advertised.getSampleSizeInBits();
+        if (bits == AudioSystem.NOT_SPECIFIED || channels <= 0 || rate <= 0) {
+            return null;
+        }
+        AudioFormat format = new AudioFormat(advertised.getEncoding(), rate, bits, channels,
+                (bits + 7) / 8 * channels, rate, advertised.isBigEndian());
+        try {
+            new PcmDecoder(format);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return format;
+    }
+
+    public TargetDataLine getLine() {
+        return line;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Bytes requested per {@link #read}.
+     */
+    public int getReadBytes() {
+        return readBytes;
+    }
+
+    public int getReadFrames() {
+        return readBytes / frameSize;
+    }
+
+    public double getReadMillis() {
+        return readBytes / bytesPerNano / 1e6;
+    }
+
+    public double getBufferMillis() {
+        return line.getBufferSize() / bytesPerNano / 1e6;
+    }
+
+    /**
+     * Frames discarded to catch up after the reader fell behind.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Reads up to {@link #getReadBytes()} bytes of whole frames into {@code buffer}, blocking until
+     * they are available. Returns fewer bytes, possibly 0, only if the line was stopped or closed,
+     * and -1 once it is closed.
+     */
+    public int read(byte[] buffer) {
+        int available = line.available();
+        if (available > backlogBytes) {
+            skip(available - readBytes);
+        }
+        int n = line.read(buffer, 0, readBytes);
+        if (n <= 0 && !line.isOpen()) {
+            return -1;
+        }
+        return Math.max(0, n - n % frameSize);
+    }
+
+    private void skip(int bytes) {
+        bytes -= bytes % frameSize;
+        while (bytes > 0) {
+            int n = line.read(discard, 0, Math.min(bytes, discard.length));
+            if (n <= 0) {
+                break;
+            }
+            bytes -= n;
+            skippedFrames += n / frameSize;
+        }
+    }
+
+    /**
+     * Estimated {@link System#nanoTime()} at which the newest sample returned by the last
+     * {@link #read} was captured: now, minus the audio that has arrived since.
+     */
+    @Override
+    public long captureNanos() {
+        return System.nanoTime() - (long) (line.available() / bytesPerNano);
+    }
+
+    @Override
+    public String describe() {
+        return String.format(Locale.ROOT, "capture %.0f Hz %d bit %dch buffer=%.1fms read=%.1fms"
+                        + " skipped=%d", format.getSampleRate(), format.getSampleSizeInBits(),
+                format.getChannels(), getBufferMillis(), getReadMillis(), skippedFrames);
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * Short-time Fourier transform of several strips of an interleaved multi-channel stream at once.
+ * Each strip is one channel or the downmix of a group of channels (see {@link ChannelMode}). A
+ * single pass over the interleaved samples downmixes and appends every strip to its ring buffer;
+ * all strips share one hop clock, one window and one FFT plan, so every completed hop transforms
+ * all strips back to back and reports them together. Downmixing sums a strip's channels in order
+ * and scales by 1/n, exactly like {@link PcmDecoder#decode}, so a single strip over all channels
+ * matches {@link StftAnalyzer} on the mono downmix. Nothing is allocated per hop. Not thread-safe.
+ */
+public class MultiChannelStft {
+
+    /**
+     * Receives the magnitude spectrum of every strip for each hop. The arrays are reused for the
+     * next hop.
+     */
+    public interface SpectraListener {
+        void onSpectra(double[][] magnitudes);
+    }
+
+    private final int fftSize;
+    private final int hopSize;
+    private final int channels;
+    private final int strips;
+    private final int[] stripOfChannel;
+    private final double[] stripScale;
+    private final double[] coefficients;
+    private final double[][] rings;
+    private final int mask;
+    private final double[] stripSums;
+    private final double[] frame;
+    private final double[][] magnitudes;
+    private final FFT fft;
+    private int writePosition;
+    private int sinceHop;
+
+    /**
+     * @param stripOfChannel strip index of every channel of the interleaved stream; strips are
+     *                       numbered from 0 without gaps
+     */
+    public MultiChannelStft(int fftSize, int hopSize, WindowFunction window,
+                            int[] stripOfChannel) {
+        if (hopSize <= 0 || hopSize > fftSize) {
+            throw new IllegalArgumentException("Hop size must be in [1, " + fftSize + "]: "
+                    + hopSize);
+        }
+        this.fft = new FFT(fftSize);
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.channels = stripOfChannel.length;
+        this.stripOfChannel = stripOfChannel.clone();
+        int count = 0;
+        for (int strip : stripOfChannel) {
+            count = Math.max(count, strip + 1);
+        }
+        this.strips = count;
+        int[] members = new int[strips];
+        for (int strip : stripOfChannel) {
+            members[strip]++;
+        }
+        this.stripScale = new double[strips];
+        for (int s = 0; s < strips; s++) {
+            if (members[s] == 0) {
+                throw new IllegalArgumentException("Strip " + s + " has no channels");
+            }
+            stripScale[s] = 1.0 / members[s];
+        }
+        this.coefficients = window.normalizedCoefficients(fftSize);
+        this.rings = new double[strips][fftSize];
+        this.mask = fftSize - 1;
+        this.stripSums = new double[strips];
+        this.frame = new double[fftSize];
+        this.magnitudes = new double[strips][fft.getBinCount()];
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getStrips() {
+        return strips;
+    }
+
+    /**
+     * Appends {@code frames} interleaved frames (as written by
+     * {@link PcmDecoder#decodeInterleaved}) and calls {@code listener} once for every completed
+     * hop.
+     */
+    public void process(double[] interleaved, int frames, SpectraListener listener) {
+        int f = 0;
+        while (f < frames) {
+            int n = Math.min(frames - f, hopSize - sinceHop);
+            for (int i = 0; i < n; i++, f++) {
+                int base = f * channels;
+                for (int s = 0; s < strips; s++) {
+                    stripSums[s] = 0;
+                }
+                for (int c = 0; c < channels; c++) {
+                    stripSums[stripOfChannel[c]] += interleaved[base + c];
+                }
+                int position = (writePosition + i) & mask;
+                for (int s = 0; s < strips; s++) {
+                    rings[s][position] = stripSums[s] * stripScale[s];
+                }
+            }
+            writePosition = (writePosition + n) & mask;
+            sinceHop += n;
+            if (sinceHop == hopSize) {
+                sinceHop = 0;
+                for (int s = 0; s < strips; s++) {
+                    transform(rings[s], magnitudes[s]);
+                }
+                listener.onSpectra(magnitudes);
+            }
+        }
+    }
+
+    private void transform(double[] ring, double[] out) {
+        // Oldest sample first: the ring starts at the current write position.
+        int head = fftSize - writePosition;
+        for (int i = 0; i < head; i++) {
+            frame[i] = ring[writePosition + i] * coefficients[i];
+        }
+        for (int i = head; i < fftSize; i++) {
+            frame[i] = ring[i - head] * coefficients[i];
+        }
+        fft.magnitudes(frame, fftSize, out);
+    }
+
+    /**
+     * Clears the sample history of every strip, e.g. after a seek.
+     */
+    public void reset() {
+        for (double[] ring : rings) {
+            Arrays.fill(ring, 0);
+        }
+        writePosition = 0;
+        sinceHop = 0;
+    }
+}
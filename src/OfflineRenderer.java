@@ -0,0 +1,293 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * Headless batch renderer: analyses an audio file and renders the visualizer at a fixed frame
+ * rate, as fast as the CPU allows, to a PNG sequence or a raw RGB24 stream.
+ * Band levels come from the preprocessing pass (and its spectral sidecar), smoothing is replayed
+ * STFT frame by frame exactly as during playback, and the frames themselves, which are independent,
+ * are rendered on a worker pool into reused images and written out in order.
+ */
+public class OfflineRenderer {
+
+    public enum OutputFormat { PNG, RGB }
+
+    /**
+     * Command line options for the render mode.
+     */
+    public static class Options {
+        public String input;
+        public String output = "-";
+        public OutputFormat format = OutputFormat.RGB;
+        public double fps = 30;
+        public int width = 1280;
+        public int height = 720;
+        public int bands = 8;
+        public BandLayout.Scale layout = BandLayout.Scale.CLASSIC;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public String renderer = "raster";
+        public int fftSize = Constants.DEFAULT_FFT_SIZE;
+        public int hopSize = Constants.DEFAULT_HOP_SIZE;
+        public WindowFunction window = WindowFunction.HANN;
+
+        /**
+         * Parses {@code --render <input> [--out <dir|file|->] [--format png|rgb] [--fps n]
+         * [--width n] [--height n] [--bands n] [--layout classic|log|mel|bark|third-octave]
+         * [--threads n] [--renderer java2d|raster]
+         * [--fft-size n] [--hop n] [--window hann|hamming|blackman_harris|rectangular]}.
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--render":
+                        options.input = value;
+                        break;
+                    case "--out":
+                        options.output = value;
+                        break;
+                    case "--format":
+                        options.format = OutputFormat.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--fps":
+                        options.fps = Double.parseDouble(value);
+                        break;
+                    case "--width":
+                        options.width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        options.height = Integer.parseInt(value);
+                        break;
+                    case "--bands":
+                        options.bands = Integer.parseInt(value);
+                        break;
+                    case "--layout":
+                        options.layout = BandLayout.Scale.valueOf(
+                                value.toUpperCase(Locale.ROOT).replace('-', '_'));
+                        break;
+                    case "--threads":
+                        options.threads = Integer.parseInt(value);
+                        break;
+                    case "--renderer":
+                        options.renderer = value;
+                        break;
+                    case "--fft-size":
+                        options.fftSize = Integer.parseInt(value);
+                        break;
+                    case "--hop":
+                        options.hopSize = Integer.parseInt(value);
+                        break;
+                    case "--window":
+                        options.window = WindowFunction.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.input == null) {
+                throw new IllegalArgumentException("--render <input file> is required");
+            }
+            int maxBands = BandLayout.maxBands(options.layout);
+            if (options.bands < 1 || options.bands > maxBands) {
+                throw new IllegalArgumentException("--bands must be 1 to " + maxBands + " for the "
+                        + options.layout.name().toLowerCase(Locale.ROOT).replace('_', '-')
+                        + " layout: " + options.bands);
+            }
+            return options;
+        }
+
+        public SessionConfig toSessionConfig() {
+            return new SessionConfig(BandLayout.of(layout, bands))
+                    .setStft(fftSize, hopSize, window)
+                    .setRenderer("java2d".equalsIgnoreCase(renderer)
+                            ? FractalGenerator::generateFractalImage : new CarpetRasterizer());
+        }
+    }
+
+    // Per-worker output buffers, reused for every frame the slot renders.
+    private static final class Slot {
+        final BufferedImage image;
+        final byte[] rgb;
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+
+        Slot(int width, int height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            rgb = new byte[width * height * 3];
+        }
+    }
+
+    private final Options options;
+    private final SessionConfig config;
+    private final FractalTileCache tileCache;
+
+    public OfflineRenderer(Options options) {
+        this.options = options;
+        this.config = options.toSessionConfig();
+        this.tileCache = new FractalTileCache(config.getTileCacheBytes(), config.getRenderer());
+    }
+
+    public void run() throws Exception {
+        long start = System.nanoTime();
+        AudioProcessor processor = new AudioProcessor(null, config);
+        processor.preprocessAudio(options.input);
+        SpectralCache cache = processor.getSpectralCache();
+        int[][] depths = computeDepths(cache, processor);
+        double analysisSeconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Analysed %d STFT frames in %.2f s, rendering %d frames%n",
+                cache.getFrameCount(), analysisSeconds, depths.length);
+
+        int threads = Math.max(1, options.threads);
+        Slot[] slots = new Slot[threads * 2];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(options.width, options.height);
+        }
+
+        File directory = null;
+        OutputStream stream = null;
+        if (options.format == OutputFormat.PNG && !options.output.equals("-")) {
+            directory = new File(options.output);
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Cannot create output directory " + directory);
+            }
+        } else {
+            stream = options.output.equals("-")
+                    ? new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 20)
+                    : new BufferedOutputStream(new FileOutputStream(options.output), 1 << 20);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long renderStart = System.nanoTime();
+        long lastReport = renderStart;
+        try {
+            List<Future<?>> batch = new ArrayList<>(slots.length);
+            for (int base = 0; base < depths.length; base += slots.length) {
+                int count = Math.min(slots.length, depths.length - base);
+                batch.clear();
+                for (int i = 0; i < count; i++) {
+                    Slot slot = slots[i];
+                    int frame = base + i;
+                    File target = directory == null ? null
+                            : new File(directory, String.format("frame_%06d.png", frame));
+                    batch.add(executor.submit(() -> {
+                        renderFrame(depths[frame], slot);
+                        encode(slot, target);
+                        return null;
+                    }));
+                }
+                for (int i = 0; i < count; i++) {
+                    batch.get(i).get();
+                    if (stream != null) {
+                        write(slots[i], stream);
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - lastReport > 1_000_000_000L) {
+                    lastReport = now;
+                    int done = base + count;
+                    System.err.printf("%d/%d frames, %.1f fps%n", done, depths.length,
+                            done / ((now - renderStart) / 1e9));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        double renderSeconds = (System.nanoTime() - renderStart) / 1e9;
+        System.err.printf("Rendered %d frames (%dx%d) in %.2f s: %.1f fps, %.1fx real time%n",
+                depths.length, options.width, options.height, renderSeconds,
+                depths.length / renderSeconds, depths.length / options.fps / renderSeconds);
+    }
+
+    // Replays the playback smoothing over the cached STFT frames and samples it at each video
+    // frame time.
+    private int[][] computeDepths(SpectralCache cache, AudioProcessor processor) {
+        int numBands = cache.getNumBands();
+        double[] floor = cache.getFloorVolumes();
+        double[] max = cache.getMaxVolumes();
+        double hopSeconds = processor.getFrameSeconds();
+        double duration = cache.getFrameCount() * hopSeconds;
+        int frameCount = (int) Math.ceil(duration * options.fps);
+
+        int[][] depths = new int[frameCount][numBands];
+        double[] smoothed = new double[numBands];
+        double[] volumes = new double[numBands];
+        int hop = 0;
+        for (int frame = 0; frame < frameCount; frame++) {
+            double time = frame / options.fps;
+            while (hop < cache.getFrameCount() && (hop + 1) * hopSeconds <= time) {
+                cache.getFrame(hop++, volumes);
+                for (int b = 0; b < numBands; b++) {
+                    smoothed[b] = AudioProcessor.SMOOTHING * volumes[b]
+                            + (1 - AudioProcessor.SMOOTHING) * smoothed[b];
+                }
+            }
+            for (int b = 0; b < numBands; b++) {
+                depths[frame][b] = AudioUtils.mapVolumeToDepth(smoothed[b], floor[b], max[b]);
+            }
+        }
+        return depths;
+    }
+
+    private void renderFrame(int[] depths, Slot slot) {
+        int numBands = depths.length;
+        TileGrid grid = new TileGrid(numBands, 1, options.width, options.height);
+        int tileWidth = grid.getTileWidth();
+        int tileHeight = grid.getTileHeight();
+        Graphics2D g2d = slot.image.createGraphics();
+        g2d.setColor(Color.BLACK);
+        g2d.fillRect(0, 0, options.width, options.height);
+        for (int i = 0; i < numBands; i++) {
+            if (depths[i] > 0 && tileWidth > 0 && tileHeight > 0) {
+                BufferedImage tile = tileCache.get(depths[i], i, tileWidth, tileHeight);
+                g2d.drawImage(tile, grid.getX(i), grid.getY(i), null);
+            }
+        }
+        g2d.dispose();
+    }
+
+    private void encode(Slot slot, File target) throws IOException {
+        if (options.format == OutputFormat.PNG) {
+            if (target != null) {
+                ImageIO.write(slot.image, "png", target);
+            } else {
+                slot.png.reset();
+                ImageIO.write(slot.image, "png", slot.png);
+            }
+            return;
+        }
+        int[] pixels = ((DataBufferInt) slot.image.getRaster().getDataBuffer()).getData();
+        byte[] rgb = slot.rgb;
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 3) {
+            int p = pixels[i];
+            rgb[j] = (byte) (p >> 16);
+            rgb[j + 1] = (byte) (p >> 8);
+            rgb[j + 2] = (byte) p;
+        }
+    }
+
+    private void write(Slot slot, OutputStream stream) throws IOException {
+        if (options.format == OutputFormat.PNG) {
+            slot.png.writeTo(stream);
+        } else {
+            stream.write(slot.rgb);
+        }
+    }
+}
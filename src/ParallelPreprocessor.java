@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the band levels of every STFT frame of a seekable PCM file in parallel.
+ * The data region is memory-mapped and split into runs of consecutive hops, each decoded,
+ * transformed and band-mapped on a fork-join pool. A run starts enough hops early to fill the
+ * analysis window (with the same leading zeros the sequential pass sees at the start of the file),
+ * so every frame is computed from exactly the same samples and written to its own slot; the result
+ * is identical to the sequential pass regardless of scheduling, and callers merge statistics by
+ * walking it in frame order.
+ */
+public class ParallelPreprocessor {
+
+    /**
+     * Receives the number of frames analysed so far. May be called from any pool thread.
+     */
+    public interface ProgressListener {
+        void onProgress(int framesDone, int totalFrames);
+    }
+
+    private static final int MIN_HOPS_PER_TASK = 64;
+    // Keeps each mapped region well below the 2 GB MappedByteBuffer limit
+    private static final long MAX_BYTES_PER_TASK = 256L * 1024 * 1024;
+
+    private final ForkJoinPool pool;
+
+    public ParallelPreprocessor(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Number of complete hops, i.e. STFT frames, in the file.
+     */
+    public static int hopCount(PcmFileInfo info, int hopSize) {
+        return (int) Math.min(Integer.MAX_VALUE, info.getFrameLength() / hopSize);
+    }
+
+    /**
+     * Returns the band levels of every STFT frame, {@code numBands} values per frame in order.
+     */
+    public double[] analyse(PcmFileInfo info, int fftSize, int hopSize, WindowFunction window,
+                            double[] bandFreqLow, double[] bandFreqHigh,
+                            ProgressListener listener) throws IOException {
+        int numBands = bandFreqLow.length;
+        int hops = hopCount(info, hopSize);
+        double[] volumes = new double[hops * numBands];
+        AtomicInteger done = new AtomicInteger();
+        int leafSize = Math.max(MIN_HOPS_PER_TASK, hops / (pool.getParallelism() * 8));
+        // Every task re-analyses its preroll; keep that a small share of the work.
+        leafSize = Math.max(leafSize, 4 * prerollHops(fftSize, hopSize));
+        long hopBytes = (long) hopSize * info.getFormat().getFrameSize();
+        leafSize = (int) Math.max(1, Math.min(leafSize, MAX_BYTES_PER_TASK / hopBytes));
+
+        Job job = new Job(info, fftSize, hopSize, window, bandFreqLow, bandFreqHigh, volumes,
+                hops, done, listener);
+        try (FileChannel channel = FileChannel.open(info.getFile().toPath(),
+                StandardOpenOption.READ)) {
+            job.channel = channel;
+            pool.invoke(new HopTask(job, 0, hops, leafSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return volumes;
+    }
+
+    // Hops needed before a task's first frame so that its window is completely filled
+    private static int prerollHops(int fftSize, int hopSize) {
+        return (fftSize - hopSize + hopSize - 1) / hopSize;
+    }
+
+    // Parameters shared by every task of one analyse call.
+    private static final class Job {
+        final PcmFileInfo info;
+        final int fftSize;
+        final int hopSize;
+        final WindowFunction window;
+        final double[] bandFreqLow;
+        final double[] bandFreqHigh;
+        final double[] volumes;
+        final int total;
+        final AtomicInteger done;
+        final ProgressListener listener;
+        FileChannel channel;
+
+        Job(PcmFileInfo info, int fftSize, int hopSize, WindowFunction window,
+            double[] bandFreqLow, double[] bandFreqHigh, double[] volumes, int total,
+            AtomicInteger done, ProgressListener listener) {
+            this.info = info;
+            this.fftSize = fftSize;
+            this.hopSize = hopSize;
+            this.window = window;
+            this.bandFreqLow = bandFreqLow;
+            this.bandFreqHigh = bandFreqHigh;
+            this.volumes = volumes;
+            this.total = total;
+            this.done = done;
+            this.listener = listener;
+        }
+    }
+
+    private static final class HopTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        HopTask(Job job, int from, int to, int leafSize) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > leafSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HopTask(job, from, mid, leafSize),
+                        new HopTask(job, mid, to, leafSize));
+                return;
+            }
+            try {
+                analyseRange();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int completed = job.done.addAndGet(to - from);
+            if (job.listener != null) {
+                job.listener.onProgress(completed, job.total);
+            }
+        }
+
+        private void analyseRange() throws IOException {
+            PcmFileInfo info = job.info;
+            int hopSize = job.hopSize;
+            int numBands = job.bandFreqLow.length;
+            PcmDecoder decoder = new PcmDecoder(info.getFormat());
+            StftAnalyzer stft = new StftAnalyzer(job.fftSize, hopSize, job.window);
+            BandMapper bandMapper = new BandMapper(info.getFormat().getSampleRate(),
+                    job.fftSize, job.bandFreqLow, job.bandFreqHigh);
+            double[] bandVolumes = new double[numBands];
+            double[] samples = new double[decoder.framesFor(Constants.BUFFER_SIZE)];
+
+            // Start early enough that the window of hop 'from' is completely filled.
+            int prerollHops = prerollHops(job.fftSize, hopSize);
+            long firstHop = (long) from - prerollHops;
+            int[] hop = {(int) firstHop};
+            StftAnalyzer.SpectrumListener store = magnitudes -> {
+                int index = hop[0]++;
+                if (index >= from) {
+                    bandMapper.map(magnitudes, bandVolumes);
+                    System.arraycopy(bandVolumes, 0, job.volumes, index * numBands, numBands);
+                }
+            };
+
+            long startSample = firstHop * hopSize;
+            for (long zeros = -startSample; zeros > 0; zeros -= samples.length) {
+                stft.process(samples, (int) Math.min(zeros, samples.length), store);
+            }
+
+            int frameSize = decoder.getFrameSize();
+            long start = Math.max(0, startSample) * frameSize;
+            long length = (long) to * hopSize * frameSize - start;
+            MappedByteBuffer region = job.channel.map(FileChannel.MapMode.READ_ONLY,
+                    info.getDataOffset() + start, length);
+            byte[] chunk = new byte[samples.length * frameSize];
+            while (region.hasRemaining()) {
+                int n = Math.min(chunk.length, region.remaining());
+                region.get(chunk, 0, n);
+                int frames = decoder.decode(chunk, 0, n, samples);
+                stft.process(samples, frames, store);
+            }
+        }
+    }
+}
@@ -0,0 +1,390 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Raw interleaved PCM from another process, e.g. a mixer or DSP chain of the rig, read from
+ * standard input, a named pipe or a loopback socket. The stream carries no header, so the format
+ * is declared by the caller. A thread of its own reads the channel straight into a fixed pool of
+ * direct buffers, which the consumer takes in arrival order and hands to the analysis pipeline
+ * without further staging copies. Chunks always hold whole frames.
+ * <p>
+ * When the consumer falls behind and every buffer is queued, the {@link Overflow} policy decides:
+ * {@link Overflow#DROP} keeps reading and discards the incoming data, so the writer never stalls,
+ * {@link Overflow#BLOCK} stops reading until a buffer is free, pushing back on the writer through
+ * the pipe or socket. Discarded bytes are counted, as are bytes the consumer reports dropped
+ * further down.
+ */
+public class PcmChannelInput implements CaptureSource, Closeable {
+
+    public enum Overflow { DROP, BLOCK }
+
+    /**
+     * Command line options for visualizing a raw PCM stream.
+     */
+    public static class Options {
+        public String source;
+        public AudioFormat format;
+        public Overflow overflow = Overflow.DROP;
+        public int bands = 8;
+        public BandLayout.Scale layout = BandLayout.Scale.CLASSIC;
+        public ChannelMode channelMode = ChannelMode.MIX;
+        public boolean metrics;
+
+        /**
+         * Parses {@code --pcm <-|stdin|fifo path|tcp:port> --pcm-format rate:bits:channels[:le|be]
+         * [:signed|unsigned|float] [--overflow drop|block] [--bands n]
+         * [--layout classic|log|mel|bark|third-octave] [--channels mix|separate]
+         * [--metrics true|false]}.
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--pcm":
+                        options.source = value;
+                        break;
+                    case "--pcm-format":
+                        options.format = parseFormat(value);
+                        break;
+                    case "--overflow":
+                        options.overflow = Overflow.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--bands":
+                        options.bands = Integer.parseInt(value);
+                        break;
+                    case "--layout":
+                        options.layout = BandLayout.Scale.valueOf(
+                                value.toUpperCase(Locale.ROOT).replace('-', '_'));
+                        break;
+                    case "--channels":
+                        options.channelMode = ChannelMode.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--metrics":
+                        options.metrics = Boolean.parseBoolean(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.source == null) {
+                throw new IllegalArgumentException("--pcm <source> is required");
+            }
+            int maxBands = BandLayout.maxBands(options.layout);
+            if (options.bands < 1 || options.bands > maxBands) {
+                throw new IllegalArgumentException("--bands must be 1 to " + maxBands + " for the "
+                        + options.layout.name().toLowerCase(Locale.ROOT).replace('_', '-')
+                        + " layout: " + options.bands);
+            }
+            if (options.format == null) {
+                throw new IllegalArgumentException("--pcm-format is required: raw PCM carries no"
+                        + " header");
+            }
+            return options;
+        }
+
+        public SessionConfig toSessionConfig() {
+            return new SessionConfig(BandLayout.of(layout, bands)).setChannelMode(channelMode);
+        }
+    }
+
+    private static final class Chunk {
+        final ByteBuffer buffer;
+        long captureNanos;
+
+        Chunk(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+
+    // Queued after the last chunk, or in place of the next one if reading failed
+    private static final Chunk END = new Chunk(0);
+    private static final ThreadFactory READERS = new IoThreadFactory("pcm-input-");
+
+    private final ReadableByteChannel channel;
+    private final String name;
+    private final AudioFormat format;
+    private final int frameSize;
+    private final Overflow overflow;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> filled;
+    private final ByteBuffer discard;
+    private final Thread thread;
+    private final AtomicLong droppedBytes = new AtomicLong();
+    private volatile long receivedBytes;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    // Consumer state
+    private Chunk current;
+    private boolean finished;
+
+    /**
+     * Starts reading {@code channel} at once.
+     *
+     * @param name       shown in {@link #describe()}, e.g. "stdin"
+     * @param chunks     number of buffers between reader and consumer
+     * @param chunkBytes size of each buffer, rounded down to whole frames
+     */
+    public PcmChannelInput(ReadableByteChannel channel, String name, AudioFormat format,
+                           Overflow overflow, int chunks, int chunkBytes, ThreadFactory threads) {
+        new PcmDecoder(format); // validates the format
+        this.channel = channel;
+        this.name = name;
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.overflow = overflow;
+        int size = Math.max(frameSize, chunkBytes - chunkBytes % frameSize);
+        this.free = new ArrayBlockingQueue<>(chunks);
+        this.filled = new ArrayBlockingQueue<>(chunks + 1);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk(size));
+        }
+        this.discard = ByteBuffer.allocateDirect(size);
+        this.thread = threads.newThread(this::readAhead);
+        thread.start();
+    }
+
+    /**
+     * Opens {@code spec}: {@code -} or {@code stdin} for standard input, {@code tcp:<port>} to
+     * accept one connection on that loopback port (this blocks until a writer connects), or the
+     * path of a named pipe or file. Buffers are sized for pipeline chunks.
+     */
+    public static PcmChannelInput open(String spec, AudioFormat format, Overflow overflow)
+            throws IOException {
+        ReadableByteChannel channel;
+        String name;
+        if ("-".equals(spec) || "stdin".equals(spec)) {
+            // A FileChannel reads into direct buffers without an intermediate array.
+            channel = new FileInputStream(FileDescriptor.in).getChannel();
+            name = "stdin";
+        } else if (spec.startsWith("tcp:")) {
+            int port = Integer.parseInt(spec.substring("tcp:".length()));
+            try (ServerSocketChannel server = ServerSocketChannel.open()) {
+                server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+                channel = server.accept();
+            }
+            name = "tcp:" + port;
+        } else {
+            // Opening a named pipe blocks until a writer opens it too.
+            channel = FileChannel.open(new File(spec).toPath(), StandardOpenOption.READ);
+            name = spec;
+        }
+        return new PcmChannelInput(channel, name, format, overflow,
+                Constants.PCM_INPUT_CHUNKS, Constants.BUFFER_SIZE, READERS);
+    }
+
+    /**
+     * Parses {@code rate:bits:channels[:le|be][:signed|unsigned|float]}, e.g.
+     * {@code 48000:16:2} for 16-bit signed little-endian stereo, the default encoding.
+     */
+    public static AudioFormat parseFormat(String spec) {
+        String[] parts = spec.split(":");
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("PCM format must be rate:bits:channels[:le|be]"
+                    + "[:signed|unsigned|float]: " + spec);
+        }
+        float rate = Float.parseFloat(parts[0]);
+        int bits = Integer.parseInt(parts[1]);
+        int channels = Integer.parseInt(parts[2]);
+        boolean bigEndian = false;
+        AudioFormat.Encoding encoding = AudioFormat.Encoding.PCM_SIGNED;
+        for (int i = 3; i < parts.length; i++) {
+            switch (parts[i].toLowerCase(Locale.ROOT)) {
+                case "le":
+                    bigEndian = false;
+                    break;
+                case "be":
+                    bigEndian = true;
+                    break;
+                case "signed":
+                    encoding = AudioFormat.Encoding.PCM_SIGNED;
+                    break;
+                case "unsigned":
+                    encoding = AudioFormat.Encoding.PCM_UNSIGNED;
+                    break;
+                case "float":
+                    encoding = AudioFormat.Encoding.PCM_FLOAT;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown PCM format option: " + parts[i]);
+            }
+        }
+        if (rate <= 0 || bits <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid PCM format: " + spec);
+        }
+        AudioFormat format = new AudioFormat(encoding, rate, bits, channels,
+                (bits + 7) / 8 * channels, rate, bigEndian);
+        new PcmDecoder(format); // rejects what the analysis cannot decode
+        return format;
+    }
+
+    private void readAhead() {
+        try {
+            while (!closed) {
+                Chunk chunk = overflow == Overflow.BLOCK ? free.take() : free.poll();
+                if (chunk == null) {
+                    // Every buffer is queued: keep the writer flowing and count the loss.
+                    discard.clear();
+                    if (!readFrames(discard)) {
+                        break;
+                    }
+                    droppedBytes.addAndGet(discard.position());
+                    receivedBytes += discard.position();
+                    continue;
+                }
+                ByteBuffer buffer = chunk.buffer;
+                buffer.clear();
+                if (!readFrames(buffer)) {
+                    break;
+                }
+                buffer.flip();
+                chunk.captureNanos = System.nanoTime();
+                receivedBytes += buffer.remaining();
+                filled.add(chunk);
+            }
+        } catch (InterruptedException | ClosedByInterruptException e) {
+            return;
+        } catch (ClosedChannelException e) {
+            // Closed by close()
+        } catch (IOException e) {
+            if (!closed) {
+                failure = e;
+            }
+        }
+        filled.offer(END);
+    }
+
+    // Reads what has arrived, completing a partial last frame. False at the end of the stream.
+    private boolean readFrames(ByteBuffer buffer) throws IOException {
+        if (channel.read(buffer) < 0) {
+            return false;
+        }
+        while (buffer.position() % frameSize != 0) {
+            if (channel.read(buffer) < 0) {
+                // A truncated last frame is dropped.
+                buffer.position(buffer.position() - buffer.position() % frameSize);
+                return buffer.position() > 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The next chunk of whole frames, waiting up to {@code timeout} for one to arrive, or
+     * {@code null} if none did or the stream has {@link #isFinished() finished}. The buffer is
+     * valid until the next call, which recycles it. Consumer thread only.
+     *
+     * @throws IOException if reading the channel failed
+     */
+    public ByteBuffer poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (current != null) {
+            free.offer(current);
+            current = null;
+        }
+        if (finished) {
+            return null;
+        }
+        Chunk chunk = filled.poll(timeout, unit);
+        if (chunk == null) {
+            return null;
+        }
+        if (chunk == END) {
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        current = chunk;
+        return chunk.buffer;
+    }
+
+    /**
+     * Whether the writer has closed the stream and every chunk has been taken. Consumer thread
+     * only.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Counts {@code bytes} the consumer could not process, e.g. a chunk the analysis pipeline
+     * had no room for.
+     */
+    public void recordDropped(int bytes) {
+        droppedBytes.addAndGet(bytes);
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * Bytes discarded because the visualizer could not keep up, by this input or its consumer.
+     */
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * When the last chunk taken finished arriving; the writer's own buffering is not known.
+     */
+    @Override
+    public long captureNanos() {
+        Chunk chunk = current;
+        return chunk != null ? chunk.captureNanos : System.nanoTime();
+    }
+
+    @Override
+    public String describe() {
+        long received = receivedBytes;
+        long dropped = droppedBytes.get();
+        return String.format(Locale.ROOT, "pcm %s %.0f Hz %d bit %dch received=%d dropped=%d"
+                        + " bytes (%.1f%%) overflow=%s", name, format.getSampleRate(),
+                format.getSampleSizeInBits(), format.getChannels(), received, dropped,
+                received == 0 ? 0 : 100.0 * dropped / received,
+                overflow.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Stops the reader thread and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        channel.close();
+    }
+}
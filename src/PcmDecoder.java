@@ -0,0 +1,267 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Decodes interleaved PCM bytes into normalized samples in the range [-1, 1).
+ * A decoder is created once per {@link AudioFormat}; the format is resolved to one of the
+ * specialized loops below up front, so nothing is re-derived per chunk. Supports 8/16/24/32-bit
+ * signed and unsigned integer PCM and 32/64-bit IEEE float in either byte order.
+ * Output is either a mono downmix or one array per channel. Instances hold scratch space and are
+ * not thread-safe.
+ */
+public class PcmDecoder {
+
+    private static final SpectralKernels KERNELS = SpectralKernels.get();
+
+    private enum Layout {
+        INT8, INT16_LE, INT16_BE, INT24_LE, INT24_BE, INT32_LE, INT32_BE,
+        FLOAT32_LE, FLOAT32_BE, FLOAT64_LE, FLOAT64_BE
+    }
+
+    private final AudioFormat format;
+    private final Layout layout;
+    private final int channels;
+    private final int bytesPerSample;
+    private final int frameSize;
+    private final int flip;
+    private double[] interleaved = new double[0];
+
+    public PcmDecoder(AudioFormat format) {
+        this.format = format;
+        this.channels = Math.max(1, format.getChannels());
+        int bits = format.getSampleSizeInBits();
+        this.bytesPerSample = (bits + 7) / 8;
+        this.frameSize = bytesPerSample * channels;
+        this.layout = resolveLayout(format);
+        // Unsigned integer PCM becomes signed by flipping the sign bit.
+        this.flip = format.getEncoding().equals(AudioFormat.Encoding.PCM_UNSIGNED)
+                ? 1 << (bits - 1)
+                : 0;
+    }
+
+    private static Layout resolveLayout(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        boolean bigEndian = format.isBigEndian();
+        int bits = format.getSampleSizeInBits();
+        if (encoding.equals(AudioFormat.Encoding.PCM_FLOAT)) {
+            if (bits == 32) return bigEndian ? Layout.FLOAT32_BE : Layout.FLOAT32_LE;
+            if (bits == 64) return bigEndian ? Layout.FLOAT64_BE : Layout.FLOAT64_LE;
+        } else if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED)
+                || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED)) {
+            switch (bits) {
+                case 8:
+                    return Layout.INT8;
+                case 16:
+                    return bigEndian ? Layout.INT16_BE : Layout.INT16_LE;
+                case 24:
+                    return bigEndian ? Layout.INT24_BE : Layout.INT24_LE;
+                case 32:
+                    return bigEndian ? Layout.INT32_BE : Layout.INT32_LE;
+                default:
+                    break;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported audio format: " + format);
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Number of whole frames contained in {@code bytes} bytes.
+     */
+    public int framesFor(int bytes) {
+        return bytes / frameSize;
+    }
+
+    /**
+     * Decodes the whole frames in {@code buffer[offset, offset + length)} and writes their mono
+     * downmix into {@code out}. Returns the number of frames written.
+     */
+    public int decode(byte[] buffer, int offset, int length, double[] out) {
+        int frames = length / frameSize;
+        if (channels == 1) {
+            decodeFrames(buffer, offset, frames, out);
+            return frames;
+        }
+        double[] scratch = scratch(frames);
+        decodeFrames(buffer, offset, frames, scratch);
+        double scale = 1.0 / channels;
+        for (int f = 0, s = 0; f < frames; f++) {
+            double sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += scratch[s++];
+            }
+            out[f] = sum * scale;
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes without downmixing: {@code out[c]} receives the samples of channel {@code c}.
+     * Returns the number of frames written per channel.
+     */
+    public int decodeChannels(byte[] buffer, int offset, int length, double[][] out) {
+        int frames = length / frameSize;
+        if (channels == 1) {
+            decodeFrames(buffer, offset, frames, out[0]);
+            return frames;
+        }
+        double[] scratch = scratch(frames);
+        decodeFrames(buffer, offset, frames, scratch);
+        for (int c = 0; c < channels; c++) {
+            double[] channel = out[c];
+            for (int f = 0, s = c; f < frames; f++, s += channels) {
+                channel[f] = scratch[s];
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes without downmixing or de-interleaving: sample {@code c} of frame {@code f} is written
+     * to {@code out[f * channels + c]}. Returns the number of frames written.
+     */
+    public int decodeInterleaved(byte[] buffer, int offset, int length, double[] out) {
+        int frames = length / frameSize;
+        decodeFrames(buffer, offset, frames, out);
+        return frames;
+    }
+
+    private double[] scratch(int frames) {
+        int needed = frames * channels;
+        if (interleaved.length < needed) {
+            interleaved = new double[needed];
+        }
+        return interleaved;
+    }
+
+    private void decodeFrames(byte[] b, int offset, int frames, double[] out) {
+        int count = frames * channels;
+        switch (layout) {
+            case INT8:
+                decodeInt8(b, offset, count, out, flip);
+                break;
+            case INT16_LE:
+                KERNELS.decodeInt16LE(b, offset, count, out, flip);
+                break;
+            case INT16_BE:
+                decodeInt16BE(b, offset, count, out, flip);
+                break;
+            case INT24_LE:
+                decodeInt24LE(b, offset, count, out, flip);
+                break;
+            case INT24_BE:
+                decodeInt24BE(b, offset, count, out, flip);
+                break;
+            case INT32_LE:
+                decodeInt32LE(b, offset, count, out, flip);
+                break;
+            case INT32_BE:
+                decodeInt32BE(b, offset, count, out, flip);
+                break;
+            case FLOAT32_LE:
+                decodeFloat32LE(b, offset, count, out);
+                break;
+            case FLOAT32_BE:
+                decodeFloat32BE(b, offset, count, out);
+                break;
+            case FLOAT64_LE:
+                decodeFloat64LE(b, offset, count, out);
+                break;
+            case FLOAT64_BE:
+                decodeFloat64BE(b, offset, count, out);
+                break;
+        }
+    }
+
+    // One straight-line loop per layout keeps the bodies small and branch-free for the JIT. The
+    // common 16-bit little-endian layout is one of the SpectralKernels.
+
+    private static void decodeInt8(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p++) {
+            out[i] = (byte) (b[p] ^ flip) * (1.0 / 128);
+        }
+    }
+
+    private static void decodeInt16BE(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p += 2) {
+            int raw = (b[p] & 0xFF) << 8 | (b[p + 1] & 0xFF);
+            out[i] = (short) (raw ^ flip) * (1.0 / 32768);
+        }
+    }
+
+    private static void decodeInt24LE(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p += 3) {
+            int raw = (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16;
+            out[i] = (((raw ^ flip) << 8) >> 8) * (1.0 / 8388608);
+        }
+    }
+
+    private static void decodeInt24BE(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p += 3) {
+            int raw = (b[p] & 0xFF) << 16 | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF);
+            out[i] = (((raw ^ flip) << 8) >> 8) * (1.0 / 8388608);
+        }
+    }
+
+    private static void decodeInt32LE(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p += 4) {
+            int raw = (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16
+                    | b[p + 3] << 24;
+            out[i] = (raw ^ flip) * (1.0 / 2147483648.0);
+        }
+    }
+
+    private static void decodeInt32BE(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p += 4) {
+            int raw = b[p] << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8
+                    | (b[p + 3] & 0xFF);
+            out[i] = (raw ^ flip) * (1.0 / 2147483648.0);
+        }
+    }
+
+    private static void decodeFloat32LE(byte[] b, int p, int count, double[] out) {
+        for (int i = 0; i < count; i++, p += 4) {
+            int bits = (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16
+                    | b[p + 3] << 24;
+            out[i] = Float.intBitsToFloat(bits);
+        }
+    }
+
+    private static void decodeFloat32BE(byte[] b, int p, int count, double[] out) {
+        for (int i = 0; i < count; i++, p += 4) {
+            int bits = b[p] << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8
+                    | (b[p + 3] & 0xFF);
+            out[i] = Float.intBitsToFloat(bits);
+        }
+    }
+
+    private static void decodeFloat64LE(byte[] b, int p, int count, double[] out) {
+        for (int i = 0; i < count; i++, p += 8) {
+            long lo = (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16
+                    | (long) (b[p + 3] & 0xFF) << 24;
+            long hi = (b[p + 4] & 0xFF) | (b[p + 5] & 0xFF) << 8 | (b[p + 6] & 0xFF) << 16
+                    | (long) (b[p + 7] & 0xFF) << 24;
+            out[i] = Double.longBitsToDouble(hi << 32 | lo);
+        }
+    }
+
+    private static void decodeFloat64BE(byte[] b, int p, int count, double[] out) {
+        for (int i = 0; i < count; i++, p += 8) {
+            long hi = (long) (b[p] & 0xFF) << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8
+                    | (b[p + 3] & 0xFF);
+            long lo = (long) (b[p + 4] & 0xFF) << 24 | (b[p + 5] & 0xFF) << 16
+                    | (b[p + 6] & 0xFF) << 8 | (b[p + 7] & 0xFF);
+            out[i] = Double.longBitsToDouble(hi << 32 | lo);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reference {@link AudioDecoder}: reads the sample data of an uncompressed WAV or AIFF file
+ * straight from a {@link FileChannel}, located by {@link PcmFileInfo}. The samples already are
+ * PCM, so decoding is a positional read into the caller's buffer, and seeking is constant time.
+ */
+public class PcmFileDecoder implements AudioDecoder {
+
+    /**
+     * Handles the WAV and AIFF files {@link PcmFileInfo} can parse and {@link PcmDecoder} can
+     * decode.
+     */
+    public static class Provider implements AudioDecoderProvider {
+        @Override
+        public AudioDecoder open(File file) throws IOException {
+            PcmFileInfo info = PcmFileInfo.parse(file);
+            if (info == null) {
+                return null;
+            }
+            try {
+                new PcmDecoder(info.getFormat());
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return new PcmFileDecoder(info);
+        }
+    }
+
+    private final PcmFileInfo info;
+    private final FileChannel channel;
+    private final int frameSize;
+    private ByteBuffer wrapped;
+    private long position;
+
+    public PcmFileDecoder(PcmFileInfo info) throws IOException {
+        this.info = info;
+        this.channel = FileChannel.open(info.getFile().toPath(), StandardOpenOption.READ);
+        this.frameSize = info.getFormat().getFrameSize();
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return info.getFormat();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return info.getFrameLength();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long remaining = info.getDataLength() - position;
+        int wanted = (int) Math.min(length - length % frameSize, remaining);
+        if (wanted <= 0) {
+            return remaining <= 0 ? -1 : 0;
+        }
+        // Callers reuse their buffers, so the wrapper is reused as well.
+        if (wrapped == null || wrapped.array() != buffer) {
+            wrapped = ByteBuffer.wrap(buffer);
+        }
+        wrapped.limit(offset + wanted).position(offset);
+        while (wrapped.hasRemaining()) {
+            int n = channel.read(wrapped, info.getDataOffset() + position + wrapped.position()
+                    - offset);
+            if (n < 0) {
+                break;
+            }
+        }
+        int read = wrapped.position() - offset;
+        read -= read % frameSize;
+        if (read == 0) {
+            // The file is shorter than its header claims.
+            return -1;
+        }
+        position += read;
+        return read;
+    }
+
+    @Override
+    public boolean seek(long frame) {
+        position = Math.max(0, Math.min(info.getFrameLength(), frame)) * frameSize;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,195 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Location and format of the uncompressed sample data inside a WAV or AIFF/AIFC file.
+ * Only the container headers are parsed, which is enough to seek to or memory-map any frame
+ * directly.
+ */
+public class PcmFileInfo {
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int HEADER_PROBE_BYTES = 64 * 1024;
+
+    private final File file;
+    private final AudioFormat format;
+    private final long dataOffset;
+    private final long dataLength;
+
+    private PcmFileInfo(File file, AudioFormat format, long dataOffset, long dataLength) {
+        this.file = file;
+        this.format = format;
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength;
+    }
+
+    /**
+     * Parses the header of a WAV or AIFF file. Returns {@code null} if the file is not one of
+     * those containers or holds compressed data.
+     */
+    public static PcmFileInfo parse(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(fileSize, HEADER_PROBE_BYTES));
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // fill the probe buffer
+            }
+            header.flip();
+            if (header.remaining() < 12) {
+                return null;
+            }
+            String riff = fourCC(header, 0);
+            String type = fourCC(header, 8);
+            if ((riff.equals("RIFF") || riff.equals("RF64")) && type.equals("WAVE")) {
+                return parseWave(file, header.order(ByteOrder.LITTLE_ENDIAN), fileSize);
+            }
+            if (riff.equals("FORM") && (type.equals("AIFF") || type.equals("AIFC"))) {
+                return parseAiff(file, header.order(ByteOrder.BIG_ENDIAN), fileSize,
+                        type.equals("AIFC"));
+            }
+            return null;
+        }
+    }
+
+    private static PcmFileInfo parseWave(File file, ByteBuffer header, long fileSize) {
+        AudioFormat format = null;
+        int position = 12;
+        while (position + 8 <= header.limit()) {
+            String id = fourCC(header, position);
+            long size = header.getInt(position + 4) & 0xFFFFFFFFL;
+            int body = position + 8;
+            if (id.equals("fmt ") && body + 16 <= header.limit()) {
+                int tag = header.getShort(body) & 0xFFFF;
+                int channels = header.getShort(body + 2) & 0xFFFF;
+                int sampleRate = header.getInt(body + 4);
+                int blockAlign = header.getShort(body + 12) & 0xFFFF;
+                int bits = header.getShort(body + 14) & 0xFFFF;
+                if (tag == WAVE_FORMAT_EXTENSIBLE && body + 26 <= header.limit()) {
+                    tag = header.getShort(body + 24) & 0xFFFF;
+                }
+                AudioFormat.Encoding encoding;
+                if (tag == WAVE_FORMAT_IEEE_FLOAT) {
+                    encoding = AudioFormat.Encoding.PCM_FLOAT;
+                } else if (tag == WAVE_FORMAT_PCM) {
+                    encoding = bits <= 8 ? AudioFormat.Encoding.PCM_UNSIGNED
+                            : AudioFormat.Encoding.PCM_SIGNED;
+                } else {
+                    return null;
+                }
+                format = new AudioFormat(encoding, sampleRate, bits, channels, blockAlign,
+                        sampleRate, false);
+            } else if (id.equals("data")) {
+                if (format == null) {
+                    return null;
+                }
+                long length = Math.min(size, fileSize - body);
+                // RF64 and streamed files may carry a placeholder size.
+                if (size == 0xFFFFFFFFL || size == 0) {
+                    length = fileSize - body;
+                }
+                return new PcmFileInfo(file, format, body, alignToFrames(length, format));
+            }
+            position = body + (int) Math.min(size + (size & 1), Integer.MAX_VALUE - body);
+        }
+        return null;
+    }
+
+    private static PcmFileInfo parseAiff(File file, ByteBuffer header, long fileSize,
+                                         boolean compressed) {
+        AudioFormat format = null;
+        int position = 12;
+        while (position + 8 <= header.limit()) {
+            String id = fourCC(header, position);
+            long size = header.getInt(position + 4) & 0xFFFFFFFFL;
+            int body = position + 8;
+            if (id.equals("COMM") && body + 18 <= header.limit()) {
+                int channels = header.getShort(body) & 0xFFFF;
+                int bits = header.getShort(body + 6) & 0xFFFF;
+                double sampleRate = readExtended(header, body + 8);
+                AudioFormat.Encoding encoding = AudioFormat.Encoding.PCM_SIGNED;
+                boolean bigEndian = true;
+                if (compressed && body + 22 <= header.limit()) {
+                    String compression = fourCC(header, body + 18);
+                    if (compression.equals("sowt")) {
+                        bigEndian = false;
+                    } else if (compression.equalsIgnoreCase("fl32")
+                            || compression.equalsIgnoreCase("fl64")) {
+                        encoding = AudioFormat.Encoding.PCM_FLOAT;
+                    } else if (!compression.equals("NONE") && !compression.equals("twos")) {
+                        return null;
+                    }
+                }
+                int frameSize = channels * ((bits + 7) / 8);
+                format = new AudioFormat(encoding, (float) sampleRate, bits, channels, frameSize,
+                        (float) sampleRate, bigEndian);
+            } else if (id.equals("SSND") && body + 8 <= header.limit()) {
+                if (format == null) {
+                    return null;
+                }
+                long offset = header.getInt(body) & 0xFFFFFFFFL;
+                long start = body + 8 + offset;
+                long length = Math.min(size - 8 - offset, fileSize - start);
+                return new PcmFileInfo(file, format, start, alignToFrames(length, format));
+            }
+            position = body + (int) Math.min(size + (size & 1), Integer.MAX_VALUE - body);
+        }
+        return null;
+    }
+
+    private static long alignToFrames(long length, AudioFormat format) {
+        int frameSize = Math.max(1, format.getFrameSize());
+        return Math.max(0, length - length % frameSize);
+    }
+
+    private static String fourCC(ByteBuffer buffer, int position) {
+        char[] chars = new char[4];
+        for (int i = 0; i < 4; i++) {
+            chars[i] = (char) (buffer.get(position + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    // 80-bit IEEE 754 extended precision, as used for the AIFF sample rate.
+    private static double readExtended(ByteBuffer buffer, int position) {
+        int exponent = ((buffer.get(position) & 0x7F) << 8) | (buffer.get(position + 1) & 0xFF);
+        long mantissa = buffer.order(ByteOrder.BIG_ENDIAN).getLong(position + 2);
+        if (exponent == 0 && mantissa == 0) {
+            return 0;
+        }
+        double value = (mantissa >>> 11) * Math.pow(2, exponent - 16383 - 52);
+        return (buffer.get(position) & 0x80) != 0 ? -value : value;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Byte offset of the first sample frame in the file.
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * Length of the sample data in bytes, truncated to whole frames.
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    public long getFrameLength() {
+        return dataLength / format.getFrameSize();
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runtime measurements of one playback or capture session: a latency histogram per pipeline stage,
+ * the frame counters of the attached {@link AnalysisPipeline}, and the state of the audio line.
+ * Disabled by default; while disabled {@link #start} returns 0 and {@link #lap} does nothing, so
+ * the instrumented loops pay one volatile read per measurement point. Enabled, a measurement is
+ * two {@code System.nanoTime} calls and a histogram increment, well below 1% of a chunk's work.
+ */
+public class PipelineMetrics {
+
+    /**
+     * Measured stages. Each is recorded by exactly one thread.
+     */
+    public enum Stage {
+        /** PCM bytes to samples, analysis thread. */
+        DECODE,
+        /** Windowing and FFT of one hop (all strips), analysis thread. */
+        FFT,
+        /** Band mapping and depth analysis of one hop, analysis thread. */
+        BANDS,
+        /** Publishing one frame to the visualizer, render thread. */
+        RENDER,
+        /** {@code SourceDataLine.write} of one chunk, I/O thread; includes blocking. */
+        WRITE,
+        /** {@code TargetDataLine.read} of one chunk, I/O thread; includes blocking. */
+        CAPTURE,
+        /**
+         * Capture of a chunk's newest sample to the first paint showing its depths, event dispatch
+         * thread. Live capture only, and recorded even while disabled.
+         */
+        DISPLAY
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private volatile boolean enabled;
+    private volatile AnalysisPipeline pipeline;
+    private volatile CaptureSource capture;
+
+    // Audio line state, written by the I/O thread only
+    private volatile int lineBufferSize;
+    private volatile int minLineAvailable = Integer.MAX_VALUE;
+    private volatile long lineChecks;
+    private volatile long underruns;
+
+    private ScheduledExecutorService dumpExecutor;
+    private File dumpFile;
+
+    public PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms[stage.ordinal()] =
+                    new LatencyHistogram(stage.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Pipeline whose frame counters are reported alongside the latencies.
+     */
+    public void attach(AnalysisPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Live input whose format, buffering and losses are reported.
+     */
+    public void attachCapture(CaptureSource capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Start of a measurement: the current time, or 0 while disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since {@code start} for a stage and returns the current time, so
+     * consecutive stages can be chained. Does nothing and returns 0 if {@code start} is 0.
+     */
+    public long lap(Stage stage, long start) {
+        if (start == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        histograms[stage.ordinal()].record(now - start);
+        return now;
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Records the free space of a playback line just before a write. A line that is completely
+     * empty after the first write has run dry, which is counted as an underrun. I/O thread only.
+     */
+    public void recordLineAvailable(int available, int bufferSize) {
+        lineBufferSize = bufferSize;
+        if (lineChecks > 0 && available >= bufferSize) {
+            underruns++;
+        }
+        if (available < minLineAvailable) {
+            minLineAvailable = available;
+        }
+        lineChecks++;
+    }
+
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Smallest free space seen in the playback line, or -1 if none was recorded.
+     */
+    public int getMinLineAvailable() {
+        return lineChecks == 0 ? -1 : minLineAvailable;
+    }
+
+    /**
+     * Human-readable summary, one line per stage followed by the counters.
+     */
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.ROOT,
+                    "%-7s n=%-8d mean=%8.1fus p50=%8.1fus p99=%8.1fus max=%8.1fus%n",
+                    histogram.getName(), histogram.getCount(), histogram.getMean() / 1e3,
+                    histogram.getValueAtQuantile(0.5) / 1e3,
+                    histogram.getValueAtQuantile(0.99) / 1e3, histogram.getMax() / 1e3));
+        }
+        AnalysisPipeline current = pipeline;
+        if (current != null) {
+            out.append(String.format(Locale.ROOT,
+                    "frames submitted=%d analysed=%d rendered=%d dropped=%d coalesced=%d%n",
+                    current.getSubmittedFrames(), current.getAnalysedFrames(),
+                    current.getRenderedFrames(), current.getDroppedFrames(),
+                    current.getCoalescedFrames()));
+        }
+        CaptureSource input = capture;
+        if (input != null) {
+            out.append(input.describe()).append(System.lineSeparator());
+        }
+        if (lineChecks > 0) {
+            out.append(String.format(Locale.ROOT,
+                    "line buffer=%d min available=%d underruns=%d%n",
+                    lineBufferSize, minLineAvailable, underruns));
+        }
+        out.append("kernels ").append(SpectralKernels.get().getName())
+                .append(System.lineSeparator());
+        return out.toString();
+    }
+
+    /**
+     * Appends {@link #format()} to {@code file} every {@code periodMillis} until
+     * {@link #stopDump()}, from a background thread.
+     */
+    public synchronized void startDump(File file, long periodMillis) {
+        stopDump();
+        dumpFile = file;
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(this::dump, periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dump, writing one final summary.
+     */
+    public synchronized void stopDump() {
+        if (dumpExecutor == null) {
+            return;
+        }
+        dumpExecutor.shutdownNow();
+        dumpExecutor = null;
+        dump();
+    }
+
+    private void dump() {
+        try (Writer writer = new FileWriter(dumpFile, true)) {
+            writer.write("# " + new Date() + System.lineSeparator());
+            writer.write(format());
+        } catch (IOException e) {
+            System.err.println("Could not write metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Clears all histograms and counters.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        minLineAvailable = Integer.MAX_VALUE;
+        lineChecks = 0;
+        underruns = 0;
+    }
+}
@@ -0,0 +1,140 @@
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes ahead of its reader on a thread of its own, so file and decoder latency overlap with
+ * whatever the reader does, e.g. writing to the audio line, instead of stalling it. A fixed pool
+ * of blocks circulates between the two threads: the decode thread fills free blocks, the reader
+ * copies them out and hands them back, so nothing is allocated while streaming. The lookahead is
+ * the pool size. Closing stops the decode thread and closes the source.
+ */
+public class PrefetchingDecoder implements AudioDecoder {
+
+    private static final class Block {
+        final byte[] data;
+        int length;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+
+    // Queued after the last block, or in place of the next one if decoding failed
+    private static final Block END = new Block(0);
+
+    private final AudioDecoder source;
+    private final int frameSize;
+    private final BlockingQueue<Block> free;
+    private final BlockingQueue<Block> filled;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    // Reader state
+    private Block current;
+    private int consumed;
+    private boolean ended;
+
+    /**
+     * @param blocks     number of blocks decoded ahead
+     * @param blockBytes size of each block, rounded down to whole frames
+     */
+    public PrefetchingDecoder(AudioDecoder source, int blocks, int blockBytes,
+                              ThreadFactory threads) {
+        this.source = source;
+        this.frameSize = source.getFormat().getFrameSize();
+        int size = Math.max(frameSize, blockBytes - blockBytes % frameSize);
+        this.free = new ArrayBlockingQueue<>(blocks);
+        this.filled = new ArrayBlockingQueue<>(blocks + 1);
+        for (int i = 0; i < blocks; i++) {
+            free.add(new Block(size));
+        }
+        this.thread = threads.newThread(this::decodeAhead);
+        thread.start();
+    }
+
+    private void decodeAhead() {
+        try {
+            while (!closed) {
+                Block block = free.take();
+                block.length = fill(block.data);
+                if (block.length == 0) {
+                    break;
+                }
+                filled.put(block);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException("Decoding failed", e);
+        }
+        filled.offer(END);
+    }
+
+    // Fills 'data' completely, or with what is left before the end
+    private int fill(byte[] data) throws IOException {
+        int length = 0;
+        while (length < data.length && !closed) {
+            int n = source.read(data, length, data.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        return length;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return source.getFormat();
+    }
+
+    @Override
+    public long getFrameLength() {
+        return source.getFrameLength();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (current == null) {
+            if (ended) {
+                return -1;
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decoded audio");
+            }
+            if (current == END) {
+                current = null;
+                ended = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return -1;
+            }
+            consumed = 0;
+        }
+        int n = Math.min(length - length % frameSize, current.length - consumed);
+        System.arraycopy(current.data, consumed, buffer, offset, n);
+        consumed += n;
+        if (consumed == current.length) {
+            free.offer(current);
+            current = null;
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        source.close();
+    }
+}
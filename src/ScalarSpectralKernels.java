@@ -0,0 +1,78 @@
+/**
+ * Plain loops for the {@link SpectralKernels}; the reference every other implementation is checked
+ * against, and the fallback on JVMs without the Vector API.
+ */
+public class ScalarSpectralKernels implements SpectralKernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void butterflies(double[] re, double[] im, int n, double[] stageCos,
+                            double[] stageSin) {
+        for (int halfBlock = 1; halfBlock < n; halfBlock <<= 1) {
+            int blockSize = halfBlock << 1;
+            for (int m = 0; m < n; m += blockSize) {
+                for (int k = 0; k < halfBlock; k++) {
+                    int i = m + k;
+                    int j = i + halfBlock;
+                    double wReal = stageCos[halfBlock + k];
+                    double wImag = stageSin[halfBlock + k];
+
+                    double tempReal = wReal * re[j] - wImag * im[j];
+                    double tempImag = wReal * im[j] + wImag * re[j];
+
+                    re[j] = re[i] - tempReal;
+                    im[j] = im[i] - tempImag;
+                    re[i] += tempReal;
+                    im[i] += tempImag;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void splitMagnitudes(double[] re, double[] im, int half, double[] cos, double[] sin,
+                                double[] magnitudes) {
+        for (int k = 1; k < half; k++) {
+            int j = half - k;
+            double evenRe = 0.5 * (re[k] + re[j]);
+            double evenIm = 0.5 * (im[k] - im[j]);
+            double oddRe = 0.5 * (im[k] + im[j]);
+            double oddIm = -0.5 * (re[k] - re[j]);
+            double outRe = evenRe + cos[k] * oddRe - sin[k] * oddIm;
+            double outIm = evenIm + cos[k] * oddIm + sin[k] * oddRe;
+            magnitudes[k] = Math.sqrt(outRe * outRe + outIm * outIm);
+        }
+    }
+
+    @Override
+    public double sumOfSquares(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i] * values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double weightedSumOfSquares(double[] values, int from, double[] weights,
+                                       int weightOffset, int count) {
+        double sum = 0;
+        for (int k = 0; k < count; k++) {
+            double v = values[from + k];
+            sum += weights[weightOffset + k] * v * v;
+        }
+        return sum;
+    }
+
+    @Override
+    public void decodeInt16LE(byte[] b, int p, int count, double[] out, int flip) {
+        for (int i = 0; i < count; i++, p += 2) {
+            int raw = (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8;
+            out[i] = (short) (raw ^ flip) * (1.0 / 32768);
+        }
+    }
+}
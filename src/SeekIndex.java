@@ -0,0 +1,116 @@
+/**
+ * Random access into a preprocessed file. Maps playback time to sample frames and to byte offsets
+ * of the decoded PCM stream, and holds a snapshot of the smoothed band levels every
+ * {@link #SNAPSHOT_INTERVAL} STFT frames. Playback can then resume anywhere with the visual state
+ * it would have had after playing from the start, replaying at most one interval of frames from
+ * the {@link SpectralCache}. Smoothing follows the playback rule, applied once per STFT frame.
+ * Immutable once built.
+ */
+public class SeekIndex {
+
+    static final int SNAPSHOT_INTERVAL = 64;
+
+    private final SpectralCache cache;
+    private final int numVolumes;
+    private final int hopSize;
+    private final int frameSize;
+    private final double sampleRate;
+    private final long frameLength;
+    private final double smoothing;
+    // Smoothed levels before STFT frame i * SNAPSHOT_INTERVAL, i.e. after all earlier frames
+    private final double[][] snapshots;
+
+    /**
+     * @param frameSize   bytes per frame of the decoded PCM stream
+     * @param frameLength length of the file in sample frames, or a negative value if unknown
+     */
+    public SeekIndex(SpectralCache cache, double sampleRate, int frameSize, long frameLength,
+                     double smoothing) {
+        this.cache = cache;
+        this.numVolumes = cache.getNumBands();
+        this.hopSize = cache.getHopSize();
+        this.frameSize = frameSize;
+        this.sampleRate = sampleRate;
+        this.frameLength = frameLength >= 0 ? frameLength
+                : (long) cache.getFrameCount() * hopSize;
+        this.smoothing = smoothing;
+
+        int frames = cache.getFrameCount();
+        snapshots = new double[frames / SNAPSHOT_INTERVAL + 1][];
+        double[] smoothed = new double[numVolumes];
+        double[] volumes = new double[numVolumes];
+        for (int f = 0; f < frames; f++) {
+            if (f % SNAPSHOT_INTERVAL == 0) {
+                snapshots[f / SNAPSHOT_INTERVAL] = smoothed.clone();
+            }
+            cache.getFrame(f, volumes);
+            smooth(volumes, smoothed);
+        }
+        if (frames % SNAPSHOT_INTERVAL == 0) {
+            snapshots[frames / SNAPSHOT_INTERVAL] = smoothed;
+        }
+    }
+
+    private void smooth(double[] volumes, double[] smoothed) {
+        for (int i = 0; i < numVolumes; i++) {
+            smoothed[i] = smoothing * volumes[i] + (1 - smoothing) * smoothed[i];
+        }
+    }
+
+    /**
+     * Band levels per frame: the bands of every strip.
+     */
+    public int getNumVolumes() {
+        return numVolumes;
+    }
+
+    public long getFrameLength() {
+        return frameLength;
+    }
+
+    public double getDurationSeconds() {
+        return frameLength / sampleRate;
+    }
+
+    /**
+     * The sample frame playing at {@code seconds}, clamped to the file.
+     */
+    public long frameAt(double seconds) {
+        long frame = (long) (seconds * sampleRate);
+        return Math.max(0, Math.min(frameLength, frame));
+    }
+
+    public double secondsAt(long frame) {
+        return frame / sampleRate;
+    }
+
+    /**
+     * Offset of {@code frame} in the decoded PCM stream.
+     */
+    public long byteOffsetOf(long frame) {
+        return frame * frameSize;
+    }
+
+    /**
+     * Newest STFT frame complete once audio up to {@code frame} has played, or -1 before the
+     * first.
+     */
+    public int stftFrameAt(long frame) {
+        return (int) Math.min(cache.getFrameCount() - 1, frame / hopSize - 1);
+    }
+
+    /**
+     * Writes the smoothed band levels after STFT frame {@code stftFrame} (all zero for -1) into
+     * {@code out}.
+     */
+    public void smoothedLevelsAt(int stftFrame, double[] out) {
+        int next = Math.max(0, Math.min(cache.getFrameCount(), stftFrame + 1));
+        int snapshot = next / SNAPSHOT_INTERVAL;
+        System.arraycopy(snapshots[snapshot], 0, out, 0, numVolumes);
+        double[] volumes = new double[numVolumes];
+        for (int f = snapshot * SNAPSHOT_INTERVAL; f < next; f++) {
+            cache.getFrame(f, volumes);
+            smooth(volumes, out);
+        }
+    }
+}
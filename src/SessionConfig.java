@@ -0,0 +1,157 @@
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Settings of one visualizer session: band layout, channel mode, analysis transform, tile renderer,
+ * tile cache budget and target frame rate. Every session owns its configuration, so sessions with
+ * different settings can run side by side in one JVM. Configure before the session starts; changes
+ * afterwards are not picked up.
+ */
+public class SessionConfig {
+
+    private final int numBands;
+    private final double[] bandFreqLow;
+    private final double[] bandFreqHigh;
+    private int fftSize = Constants.DEFAULT_FFT_SIZE;
+    private int hopSize = Constants.DEFAULT_HOP_SIZE;
+    private WindowFunction window = WindowFunction.HANN;
+    private CarpetRenderer renderer = FractalGenerator::generateFractalImage;
+    private long tileCacheBytes = Constants.TILE_CACHE_BYTES;
+    private double targetFrameRate = Constants.DEFAULT_TARGET_FRAME_RATE;
+    private ChannelMode channelMode = ChannelMode.MIX;
+    private AudioFormat captureFormat = new AudioFormat(44100, 16, 2, true, false);
+    private double targetLatencyMillis = Constants.DEFAULT_TARGET_LATENCY_MILLIS;
+
+    /**
+     * The first {@code numBands} bands of the built-in layout.
+     */
+    public SessionConfig(int numBands) {
+        this(Constants.bandFreqLow(numBands), Constants.bandFreqHigh(numBands));
+    }
+
+    /**
+     * A generated band layout, e.g. {@code BandLayout.of(BandLayout.Scale.MEL, 128)}.
+     */
+    public SessionConfig(BandLayout layout) {
+        this(layout.getBandFreqLow(), layout.getBandFreqHigh());
+    }
+
+    /**
+     * A custom band layout, one entry per band.
+     */
+    public SessionConfig(double[] bandFreqLow, double[] bandFreqHigh) {
+        if (bandFreqLow.length != bandFreqHigh.length || bandFreqLow.length == 0) {
+            throw new IllegalArgumentException("Band edges must be non-empty and of equal length");
+        }
+        this.numBands = bandFreqLow.length;
+        this.bandFreqLow = bandFreqLow.clone();
+        this.bandFreqHigh = bandFreqHigh.clone();
+    }
+
+    public int getNumBands() {
+        return numBands;
+    }
+
+    public double[] getBandFreqLow() {
+        return bandFreqLow.clone();
+    }
+
+    public double[] getBandFreqHigh() {
+        return bandFreqHigh.clone();
+    }
+
+    /**
+     * Short-time Fourier transform parameters: window length (a power of two, typically
+     * 1024-16384), hop in samples (at most the window length) and window shape. A longer window
+     * resolves low bands better, a shorter hop updates the visuals more often.
+     */
+    public SessionConfig setStft(int fftSize, int hopSize, WindowFunction window) {
+        new StftAnalyzer(fftSize, hopSize, window); // validates the parameters
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        return this;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public WindowFunction getWindow() {
+        return window;
+    }
+
+    /**
+     * Renderer for band tiles: the recursive Java2D renderer by default, or a
+     * {@link CarpetRasterizer}.
+     */
+    public SessionConfig setRenderer(CarpetRenderer renderer) {
+        this.renderer = renderer;
+        return this;
+    }
+
+    public CarpetRenderer getRenderer() {
+        return renderer;
+    }
+
+    public SessionConfig setTileCacheBytes(long tileCacheBytes) {
+        this.tileCacheBytes = tileCacheBytes;
+        return this;
+    }
+
+    public long getTileCacheBytes() {
+        return tileCacheBytes;
+    }
+
+    /**
+     * Frame rate the panel holds by reducing detail when frames take too long (see
+     * {@link FrameBudget}); 0 keeps full detail however slow it gets.
+     */
+    public SessionConfig setTargetFrameRate(double targetFrameRate) {
+        this.targetFrameRate = targetFrameRate;
+        return this;
+    }
+
+    public double getTargetFrameRate() {
+        return targetFrameRate;
+    }
+
+    /**
+     * Whether each source is analysed as one downmixed strip (the default) or each of its
+     * channels gets a strip of its own.
+     */
+    public SessionConfig setChannelMode(ChannelMode channelMode) {
+        this.channelMode = channelMode;
+        return this;
+    }
+
+    public ChannelMode getChannelMode() {
+        return channelMode;
+    }
+
+    /**
+     * Live capture: the preferred input format, used if the mixer supports it and otherwise
+     * approximated by the closest format it advertises, and the latency the line buffer and read
+     * size are sized for. Smaller targets react faster but risk overruns on a busy machine.
+     */
+    public SessionConfig setLiveCapture(AudioFormat captureFormat, double targetLatencyMillis) {
+        if (targetLatencyMillis <= 0) {
+            throw new IllegalArgumentException("Target latency must be positive: "
+                    + targetLatencyMillis);
+        }
+        this.captureFormat = captureFormat;
+        this.targetLatencyMillis = targetLatencyMillis;
+        return this;
+    }
+
+    public AudioFormat getCaptureFormat() {
+        return captureFormat;
+    }
+
+    public double getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+}
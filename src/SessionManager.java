@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs any number of independent {@link VisualizerSession}s in one JVM. Each session's blocking I/O
+ * loop gets its own thread from a shared {@link IoThreadFactory}, virtual where available, plus the
+ * analysis and render threads of its pipeline, so a session costs a fixed, small number of threads.
+ */
+public class SessionManager {
+
+    private final IoThreadFactory threads = new IoThreadFactory("visualizer-session-");
+    private final List<VisualizerSession> sessions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Starts {@code session} and tracks it until it has ended.
+     */
+    public VisualizerSession start(VisualizerSession session) {
+        sessions.removeIf(VisualizerSession::isDone);
+        sessions.add(session);
+        session.start(threads);
+        return session;
+    }
+
+    /**
+     * Sessions that were started and have not ended yet.
+     */
+    public List<VisualizerSession> getSessions() {
+        List<VisualizerSession> active = new ArrayList<>();
+        for (VisualizerSession session : sessions) {
+            if (!session.isDone()) {
+                active.add(session);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Asks every running session to stop. Returns immediately.
+     */
+    public void stopAll() {
+        for (VisualizerSession session : sessions) {
+            session.stop();
+        }
+    }
+
+    /**
+     * Waits until every session started so far has ended.
+     */
+    public void awaitAll() throws InterruptedException {
+        for (VisualizerSession session : sessions) {
+            session.await();
+        }
+        sessions.removeIf(VisualizerSession::isDone);
+    }
+
+    /**
+     * Waits up to {@code timeout} for every session to end; returns whether they all did.
+     */
+    public boolean awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (VisualizerSession session : sessions) {
+            long remaining = deadline - System.nanoTime();
+            if (!session.await(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        sessions.removeIf(VisualizerSession::isDone);
+        return true;
+    }
+
+    /**
+     * Whether session I/O loops run on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        return threads.isVirtual();
+    }
+
+    ThreadFactory getThreadFactory() {
+        return threads;
+    }
+}
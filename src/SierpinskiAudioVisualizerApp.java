@@ -24,10 +24,33 @@
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SierpinskiAudioVisualizerApp {
 
+    // Where the "Metrics" option appends its periodic summaries
+    private static final String METRICS_LOG = "visualizer-metrics.log";
+    private static final long METRICS_PERIOD_MILLIS = 5000;
+    private static final int LATENCY_STATUS_MILLIS = 500;
+    private static final int TIMELINE_UPDATE_MILLIS = 200;
+    // Layout combo entries, in the order of BandLayout.Scale
+    private static final String[] LAYOUT_NAMES =
+            {"Classic", "Logarithmic", "Mel", "Bark", "Third-octave"};
+
     public static void main(String[] args) {
+        if (args.length > 0 && "--pcm".equals(args[0])) {
+            runPcmInput(args);
+            return;
+        }
+        if (args.length > 0) {
+            runHeadless(args);
+            return;
+        }
+
         try {
             // Set Nimbus Look and Feel for a modern UI
             UIManager.setLookAndFeel("javax.swing.plaf.nimbus.NimbusLookAndFeel");
@@ -62,7 +85,7 @@ public class SierpinskiAudioVisualizerApp {
         fileButton.setBackground(new Color(61, 174, 233)); // Light blue
         fileButton.setForeground(Color.WHITE);
         fileButton.setFocusPainted(false);
-        fileButton.setToolTipText("Select an audio file to visualize");
+        fileButton.setToolTipText("Select one or more audio files to visualize together");
 
         // Panel for file selection
         JPanel filePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
@@ -76,19 +99,54 @@ public class SierpinskiAudioVisualizerApp {
         mainPanel.add(filePanel, gbc);
 
         // Number of Bands Components
-        JLabel bandLabel = new JLabel("Number of Bands (1-20):");
+        JLabel bandLabel = new JLabel("Number of Bands (1-" + Constants.MAX_GENERATED_BANDS + "):");
         bandLabel.setForeground(Color.WHITE);
         bandLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
 
-        SpinnerNumberModel spinnerModel = new SpinnerNumberModel(1, 1, 20, 1);
+        SpinnerNumberModel spinnerModel = new SpinnerNumberModel(1, 1,
+                Constants.MAX_GENERATED_BANDS, 1);
         JSpinner bandSpinner = new JSpinner(spinnerModel);
         bandSpinner.setFont(new Font("SansSerif", Font.PLAIN, 14));
 
+        // Band layout selection
+        JComboBox<String> layoutCombo = new JComboBox<>(LAYOUT_NAMES);
+        layoutCombo.setFont(new Font("SansSerif", Font.PLAIN, 14));
+        layoutCombo.setToolTipText("Classic: the original " + Constants.MAX_BANDS
+                + " bands; Third-octave: up to "
+                + BandLayout.maxBands(BandLayout.Scale.THIRD_OCTAVE) + " standard bands; the"
+                + " others up to " + Constants.MAX_GENERATED_BANDS + " bands over 20 Hz - 20 kHz");
+
+        // Renderer selection
+        JLabel rendererLabel = new JLabel("Renderer:");
+        rendererLabel.setForeground(Color.WHITE);
+        rendererLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
+
+        JComboBox<String> rendererCombo = new JComboBox<>(new String[]{"Java2D", "Raster"});
+        rendererCombo.setFont(new Font("SansSerif", Font.PLAIN, 14));
+        rendererCombo.setToolTipText("Java2D draws squares recursively; Raster computes pixels directly");
+
+        // Channel mode selection
+        JComboBox<String> channelCombo = new JComboBox<>(new String[]{"Mix", "Separate"});
+        channelCombo.setFont(new Font("SansSerif", Font.PLAIN, 14));
+        channelCombo.setToolTipText("Mix: one strip per file; Separate: one strip per channel");
+
+        JCheckBox metricsCheckBox = new JCheckBox("Metrics");
+        metricsCheckBox.setFont(new Font("SansSerif", Font.PLAIN, 14));
+        metricsCheckBox.setForeground(Color.WHITE);
+        metricsCheckBox.setOpaque(false);
+        metricsCheckBox.setToolTipText("Show stage latencies and frame counters, and log them to "
+                + METRICS_LOG);
+
         // Panel for band selection
         JPanel bandPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
         bandPanel.setBackground(new Color(40, 44, 52));
         bandPanel.add(bandLabel);
         bandPanel.add(bandSpinner);
+        bandPanel.add(layoutCombo);
+        bandPanel.add(rendererLabel);
+        bandPanel.add(rendererCombo);
+        bandPanel.add(channelCombo);
+        bandPanel.add(metricsCheckBox);
 
         gbc.gridy++;
         mainPanel.add(bandPanel, gbc);
@@ -126,6 +184,23 @@ public class SierpinskiAudioVisualizerApp {
         gbc.gridy++;
         mainPanel.add(buttonsPanel, gbc);
 
+        // Timeline for seeking and scrubbing during file playback
+        JSlider timelineSlider = new JSlider(0, 0, 0);
+        timelineSlider.setBackground(new Color(40, 44, 52));
+        timelineSlider.setEnabled(false);
+        timelineSlider.setToolTipText("Drag to seek");
+        JLabel timeLabel = new JLabel(formatTime(0) + " / " + formatTime(0));
+        timeLabel.setForeground(Color.WHITE);
+        timeLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+
+        JPanel timelinePanel = new JPanel(new BorderLayout(10, 0));
+        timelinePanel.setBackground(new Color(40, 44, 52));
+        timelinePanel.add(timelineSlider, BorderLayout.CENTER);
+        timelinePanel.add(timeLabel, BorderLayout.EAST);
+
+        gbc.gridy++;
+        mainPanel.add(timelinePanel, gbc);
+
         // Status Bar
         JLabel statusLabel = new JLabel("Welcome! Please select an audio file to begin.");
         statusLabel.setForeground(Color.WHITE);
@@ -146,88 +221,119 @@ public class SierpinskiAudioVisualizerApp {
         frame.setLocationRelativeTo(null); // Center the window
         frame.setVisible(true);
 
-        final String[] selectedFile = new String[1];
-        final AudioProcessor[] audioProcessor = new AudioProcessor[1];
+        final List<String> selectedFiles = new ArrayList<>();
+        final VisualizerPanel[] shownPanel = new VisualizerPanel[1];
+        final SessionManager sessions = new SessionManager();
+        // Processor the timeline seeks; null while no file is playing
+        final AudioProcessor[] seekTarget = new AudioProcessor[1];
+        final Timer[] timelineTimer = new Timer[1];
+
+        // Seeks on every move by the user, so dragging scrubs through the file
+        timelineSlider.addChangeListener(e -> {
+            if (seekTarget[0] != null && timelineSlider.getClientProperty("updating") == null) {
+                seekTarget[0].seek(timelineSlider.getValue() / 1000.0);
+            }
+        });
 
         // Event listeners
         fileButton.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setDialogTitle("Select an Audio File");
+            fileChooser.setDialogTitle("Select Audio Files");
+            fileChooser.setMultiSelectionEnabled(true);
             int returnVal = fileChooser.showOpenDialog(frame);
             if (returnVal == JFileChooser.APPROVE_OPTION) {
-                File file = fileChooser.getSelectedFile();
-                selectedFile[0] = file.getAbsolutePath();
-                fileTextField.setText(file.getName());
-                statusLabel.setText("Selected file: " + file.getName());
+                selectedFiles.clear();
+                StringBuilder names = new StringBuilder();
+                for (File file : fileChooser.getSelectedFiles()) {
+                    selectedFiles.add(file.getAbsolutePath());
+                    names.append(names.length() > 0 ? ", " : "").append(file.getName());
+                }
+                fileTextField.setText(names.toString());
+                statusLabel.setText("Selected: " + names);
             }
         });
 
         startButton.addActionListener(e -> {
-            if (selectedFile[0] == null) {
+            if (selectedFiles.isEmpty()) {
                 JOptionPane.showMessageDialog(frame, "Please select an audio file.", "No File Selected", JOptionPane.WARNING_MESSAGE);
                 return;
             }
 
-            if (audioProcessor[0] != null) {
-                audioProcessor[0].stop();
+            BandLayout layout = selectedLayout(frame, layoutCombo, bandSpinner);
+            if (layout == null) {
+                return;
             }
-
-            int numBands = (Integer) bandSpinner.getValue();
-            Constants.setNumBands(numBands);
-
-            VisualizerPanel visualizerPanel = new VisualizerPanel(numBands);
-            frame.add(visualizerPanel, BorderLayout.CENTER);
-            frame.revalidate();
-            frame.repaint();
-
-            Thread audioThread = new Thread(() -> {
-                try {
-                    audioProcessor[0] = new AudioProcessor(visualizerPanel);
-                    audioProcessor[0].preprocessAudio(selectedFile[0]);
-                    audioProcessor[0].processAudio(selectedFile[0]);
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    JOptionPane.showMessageDialog(frame, "An error occurred during audio processing.", "Error", JOptionPane.ERROR_MESSAGE);
+            SessionConfig config = new SessionConfig(layout)
+                    .setRenderer(selectedRenderer(rendererCombo))
+                    .setChannelMode(selectedChannelMode(channelCombo));
+            List<String> files = new ArrayList<>(selectedFiles);
+            stopTimeline(timelineSlider, seekTarget, timelineTimer);
+            afterSessionsEnd(sessions, () -> {
+                VisualizerPanel visualizerPanel = showPanel(frame, shownPanel, config);
+
+                VisualizerSession session = VisualizerSession.forFiles(files, config, visualizerPanel);
+                if (metricsCheckBox.isSelected()) {
+                    enableMetrics(session.getProcessor(), visualizerPanel);
                 }
+                session.getProcessor().setProgressListener(progressReporter(statusLabel));
+                session.setListener((s, state) -> SwingUtilities.invokeLater(() -> {
+                    if (state == VisualizerSession.State.RUNNING) {
+                        statusLabel.setText("Visualization running...");
+                    } else if (state == VisualizerSession.State.FAILED) {
+                        s.getFailure().printStackTrace();
+                        JOptionPane.showMessageDialog(frame, "An error occurred during audio processing.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }));
+                sessions.start(session);
+                seekTarget[0] = session.getProcessor();
+                timelineTimer[0] = timelineUpdater(timelineSlider, timeLabel, session);
+                timelineTimer[0].start();
             });
 
-            audioThread.start();
-
             fileButton.setEnabled(false);
             bandSpinner.setEnabled(false);
+            layoutCombo.setEnabled(false);
+            rendererCombo.setEnabled(false);
+            channelCombo.setEnabled(false);
+            metricsCheckBox.setEnabled(false);
             startButton.setEnabled(false);
             liveModeButton.setEnabled(false);
             stopButton.setEnabled(true);
-            statusLabel.setText("Visualization running...");
+            statusLabel.setText("Analyzing audio...");
         });
 
         liveModeButton.addActionListener(e -> {
-            if (audioProcessor[0] != null) {
-                audioProcessor[0].stop();
+            BandLayout layout = selectedLayout(frame, layoutCombo, bandSpinner);
+            if (layout == null) {
+                return;
             }
-
-            int numBands = (Integer) bandSpinner.getValue();
-            Constants.setNumBands(numBands);
-
-            VisualizerPanel visualizerPanel = new VisualizerPanel(numBands);
-            frame.add(visualizerPanel, BorderLayout.CENTER);
-            frame.revalidate();
-            frame.repaint();
-
-            Thread liveThread = new Thread(() -> {
-                try {
-                    audioProcessor[0] = new AudioProcessor(visualizerPanel);
-                    audioProcessor[0].processLiveAudio();
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    JOptionPane.showMessageDialog(frame, "An error occurred during live audio processing.", "Error", JOptionPane.ERROR_MESSAGE);
+            SessionConfig config = new SessionConfig(layout)
+                    .setRenderer(selectedRenderer(rendererCombo))
+                    .setChannelMode(selectedChannelMode(channelCombo));
+            stopTimeline(timelineSlider, seekTarget, timelineTimer);
+            afterSessionsEnd(sessions, () -> {
+                VisualizerPanel visualizerPanel = showPanel(frame, shownPanel, config);
+
+                VisualizerSession session = VisualizerSession.forLiveInput(config, visualizerPanel);
+                if (metricsCheckBox.isSelected()) {
+                    enableMetrics(session.getProcessor(), visualizerPanel);
                 }
+                session.setListener((s, state) -> {
+                    if (state == VisualizerSession.State.FAILED) {
+                        s.getFailure().printStackTrace();
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "An error occurred during live audio processing.", "Error", JOptionPane.ERROR_MESSAGE));
+                    }
+                });
+                sessions.start(session);
+                latencyReporter(statusLabel, session).start();
             });
 
-            liveThread.start();
-
             fileButton.setEnabled(false);
             bandSpinner.setEnabled(false);
+            layoutCombo.setEnabled(false);
+            rendererCombo.setEnabled(false);
+            channelCombo.setEnabled(false);
+            metricsCheckBox.setEnabled(false);
             startButton.setEnabled(false);
             liveModeButton.setEnabled(false);
             stopButton.setEnabled(true);
@@ -235,15 +341,224 @@ public class SierpinskiAudioVisualizerApp {
         });
 
         stopButton.addActionListener(e -> {
-            if (audioProcessor[0] != null) {
-                audioProcessor[0].stop();
-            }
-            fileButton.setEnabled(true);
-            bandSpinner.setEnabled(true);
-            startButton.setEnabled(true);
-            liveModeButton.setEnabled(true);
+            stopTimeline(timelineSlider, seekTarget, timelineTimer);
             stopButton.setEnabled(false);
-            statusLabel.setText("Visualization stopped.");
+            statusLabel.setText("Stopping...");
+            // Controls come back only once the session has ended, so a new one cannot overlap it.
+            afterSessionsEnd(sessions, () -> {
+                fileButton.setEnabled(true);
+                bandSpinner.setEnabled(true);
+                layoutCombo.setEnabled(true);
+                rendererCombo.setEnabled(true);
+                channelCombo.setEnabled(true);
+                metricsCheckBox.setEnabled(true);
+                startButton.setEnabled(true);
+                liveModeButton.setEnabled(true);
+                statusLabel.setText("Visualization stopped.");
+            });
         });
     }
-}
\ No newline at end of file
+
+    // Offline render mode, e.g. --render song.wav --format rgb --out - | ffmpeg ...
+    private static void runHeadless(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            new OfflineRenderer(OfflineRenderer.Options.parse(args)).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java SierpinskiAudioVisualizerApp --render <audio file>"
+                    + " [--out <dir|file|->] [--format png|rgb] [--fps 30] [--width 1280]"
+                    + " [--height 720] [--bands 8] [--layout classic|log|mel|bark|third-octave]"
+                    + " [--threads n] [--renderer raster|java2d]"
+                    + " [--fft-size 4096] [--hop 1024] [--window hann|hamming|blackman_harris]");
+            System.exit(2);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // Raw PCM from another process, e.g. sox ... -t raw - | java ... --pcm - --pcm-format 48000:16:2
+    private static void runPcmInput(String[] args) {
+        PcmChannelInput.Options options;
+        SessionConfig config;
+        try {
+            options = PcmChannelInput.Options.parse(args);
+            config = options.toSessionConfig();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java SierpinskiAudioVisualizerApp --pcm <-|fifo path|tcp:port>"
+                    + " --pcm-format rate:bits:channels[:le|be][:signed|unsigned|float]"
+                    + " [--overflow drop|block] [--bands 8]"
+                    + " [--layout classic|log|mel|bark|third-octave] [--channels mix|separate]"
+                    + " [--metrics true|false]");
+            System.exit(2);
+            return;
+        }
+        PcmChannelInput input;
+        try {
+            input = PcmChannelInput.open(options.source, options.format, options.overflow);
+        } catch (IOException e) {
+            System.err.println("Could not open PCM input " + options.source + ": "
+                    + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        JFrame frame = new JFrame("Sierpinski's Carpet Audio Visualizer - " + options.source);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        VisualizerPanel panel = new VisualizerPanel(config);
+        frame.add(panel, BorderLayout.CENTER);
+        frame.setSize(900, 700);
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+
+        VisualizerSession session = VisualizerSession.forPcmInput(input, config, panel);
+        if (options.metrics) {
+            enableMetrics(session.getProcessor(), panel);
+        }
+        session.setListener((s, state) -> {
+            if (state == VisualizerSession.State.FAILED) {
+                s.getFailure().printStackTrace();
+            } else if (state == VisualizerSession.State.FINISHED) {
+                System.err.println(input.describe());
+            }
+        });
+        new SessionManager().start(session);
+    }
+
+    // The selected layout, or null after telling the user it has too few bands
+    private static BandLayout selectedLayout(JFrame frame, JComboBox<String> layoutCombo,
+                                             JSpinner bandSpinner) {
+        BandLayout.Scale scale = BandLayout.Scale.values()[layoutCombo.getSelectedIndex()];
+        int bands = (Integer) bandSpinner.getValue();
+        int maxBands = BandLayout.maxBands(scale);
+        if (bands > maxBands) {
+            JOptionPane.showMessageDialog(frame, "The " + LAYOUT_NAMES[scale.ordinal()]
+                    + " layout has at most " + maxBands + " bands. Choose fewer bands or"
+                    + " another layout.", "Too Many Bands", JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+        return BandLayout.of(scale, bands);
+    }
+
+    private static CarpetRenderer selectedRenderer(JComboBox<String> rendererCombo) {
+        if ("Raster".equals(rendererCombo.getSelectedItem())) {
+            return new CarpetRasterizer(ForkJoinPool.commonPool());
+        }
+        return FractalGenerator::generateFractalImage;
+    }
+
+    private static ChannelMode selectedChannelMode(JComboBox<String> channelCombo) {
+        return "Separate".equals(channelCombo.getSelectedItem()) ? ChannelMode.SEPARATE
+                : ChannelMode.MIX;
+    }
+
+    // Stops every session and runs next on the EDT once they have all ended, so two sessions never
+    // play at once and a panel is only disposed after its session has stopped publishing to it.
+    private static void afterSessionsEnd(SessionManager sessions, Runnable next) {
+        sessions.stopAll();
+        Thread waiter = new Thread(() -> {
+            try {
+                sessions.awaitAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            SwingUtilities.invokeLater(next);
+        }, "session-stop");
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    // Replaces the previous session's panel, releasing its timers and tile cache.
+    private static VisualizerPanel showPanel(JFrame frame, VisualizerPanel[] shownPanel,
+                                             SessionConfig config) {
+        if (shownPanel[0] != null) {
+            frame.remove(shownPanel[0]);
+            shownPanel[0].dispose();
+        }
+        shownPanel[0] = new VisualizerPanel(config);
+        frame.add(shownPanel[0], BorderLayout.CENTER);
+        frame.revalidate();
+        frame.repaint();
+        return shownPanel[0];
+    }
+
+    private static void enableMetrics(AudioProcessor processor, VisualizerPanel panel) {
+        processor.getMetrics().setEnabled(true);
+        processor.setMetricsLog(new File(METRICS_LOG), METRICS_PERIOD_MILLIS);
+        SwingUtilities.invokeLater(() -> panel.setMetricsOverlay(processor.getMetrics()));
+    }
+
+    // Shows preprocessing progress in the status bar, posting only when the percentage changes.
+    private static ParallelPreprocessor.ProgressListener progressReporter(JLabel statusLabel) {
+        AtomicInteger lastPercent = new AtomicInteger(-1);
+        return (chunksDone, totalChunks) -> {
+            int percent = totalChunks > 0 ? (int) (100L * chunksDone / totalChunks) : 0;
+            int previous = lastPercent.get();
+            if (percent > previous && lastPercent.compareAndSet(previous, percent)) {
+                SwingUtilities.invokeLater(() -> statusLabel.setText(
+                        "Analyzing audio... " + percent + "%"));
+            }
+        };
+    }
+
+    // Shows the median capture-to-screen latency of a live session until it ends
+    private static Timer latencyReporter(JLabel statusLabel, VisualizerSession session) {
+        LatencyHistogram display = session.getProcessor().getMetrics()
+                .getHistogram(PipelineMetrics.Stage.DISPLAY);
+        Timer timer = new Timer(LATENCY_STATUS_MILLIS, null);
+        timer.addActionListener(e -> {
+            if (session.isDone()) {
+                timer.stop();
+            } else if (display.getCount() > 0) {
+                statusLabel.setText(String.format("Live visualization running... latency %.0f ms",
+                        display.getValueAtQuantile(0.5) / 1e6));
+            }
+        });
+        return timer;
+    }
+
+    // Follows the playback position of a file session; the slider is enabled once the length is
+    // known from preprocessing. Stops when the session ends.
+    private static Timer timelineUpdater(JSlider slider, JLabel timeLabel,
+                                         VisualizerSession session) {
+        AudioProcessor processor = session.getProcessor();
+        Timer timer = new Timer(TIMELINE_UPDATE_MILLIS, null);
+        timer.addActionListener(e -> {
+            if (session.isDone()) {
+                timer.stop();
+                slider.setEnabled(false);
+                return;
+            }
+            double duration = processor.getDurationSeconds();
+            double position = Math.min(duration, processor.getPlaybackSeconds());
+            timeLabel.setText(formatTime(position) + " / " + formatTime(duration));
+            if (duration <= 0 || slider.getValueIsAdjusting()) {
+                return;
+            }
+            slider.putClientProperty("updating", Boolean.TRUE);
+            slider.setMaximum((int) (duration * 1000));
+            slider.setValue((int) (position * 1000));
+            slider.putClientProperty("updating", null);
+            slider.setEnabled(true);
+        });
+        return timer;
+    }
+
+    private static void stopTimeline(JSlider slider, AudioProcessor[] seekTarget,
+                                     Timer[] timelineTimer) {
+        seekTarget[0] = null;
+        if (timelineTimer[0] != null) {
+            timelineTimer[0].stop();
+            timelineTimer[0] = null;
+        }
+        slider.setEnabled(false);
+    }
+
+    private static String formatTime(double seconds) {
+        long total = (long) seconds;
+        return String.format("%d:%02d", total / 60, total % 60);
+    }
+}
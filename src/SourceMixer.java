@@ -0,0 +1,256 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Combines several audio sources (files or capture lines) into one interleaved stream whose frames
+ * hold the channels of every source in order, so a whole installation is decoded and analysed in
+ * one pass per chunk. All sources must share a sample rate; sample encodings are converted to that
+ * of the first source. A source that ends early is padded with silence until the last one ends.
+ * For playback, {@link #mixDown} mixes the combined frames into 16-bit stereo (mono if every source
+ * is mono) with equal gain per source. Not thread-safe.
+ */
+public class SourceMixer implements Closeable {
+
+    private final AudioInputStream[] sources;
+    private final int[] channelsPerSource;
+    private final int[] sourceFrameSizes;
+    private final byte[][] sourceBuffers;
+    private final int[] sourceFrames;
+    private final AudioFormat format;
+    private final AudioFormat playbackFormat;
+    private final AudioInputStream stream;
+    private final PcmDecoder decoder;
+    // Playback channel and gain of every channel of the combined stream
+    private final int[] outputOf;
+    private final double[] gainOf;
+    private double[] samples = new double[0];
+    private double[] mix = new double[0];
+
+    public SourceMixer(List<AudioInputStream> inputs) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No audio sources");
+        }
+        AudioFormat first = inputs.get(0).getFormat();
+        AudioFormat.Encoding encoding = first.getEncoding().equals(AudioFormat.Encoding.PCM_FLOAT)
+                ? AudioFormat.Encoding.PCM_FLOAT
+                : AudioFormat.Encoding.PCM_SIGNED;
+        float sampleRate = first.getSampleRate();
+        int bits = first.getSampleSizeInBits();
+        int bytesPerSample = (bits + 7) / 8;
+
+        sources = new AudioInputStream[inputs.size()];
+        channelsPerSource = new int[sources.length];
+        sourceFrameSizes = new int[sources.length];
+        sourceBuffers = new byte[sources.length][];
+        sourceFrames = new int[sources.length];
+        int totalChannels = 0;
+        long frameLength = 0;
+        boolean allMono = true;
+        for (int i = 0; i < sources.length; i++) {
+            AudioInputStream input = inputs.get(i);
+            AudioFormat format = input.getFormat();
+            if (format.getSampleRate() != sampleRate) {
+                throw new IllegalArgumentException("All sources must share one sample rate: "
+                        + format.getSampleRate() + " Hz vs " + sampleRate + " Hz");
+            }
+            int channels = Math.max(1, format.getChannels());
+            AudioFormat target = new AudioFormat(encoding, sampleRate, bits, channels,
+                    bytesPerSample * channels, sampleRate, first.isBigEndian());
+            sources[i] = format.matches(target) ? input
+                    : AudioSystem.getAudioInputStream(target, input);
+            channelsPerSource[i] = channels;
+            sourceFrameSizes[i] = bytesPerSample * channels;
+            totalChannels += channels;
+            allMono &= channels == 1;
+            long length = sources[i].getFrameLength();
+            frameLength = length == AudioSystem.NOT_SPECIFIED || frameLength < 0
+                    ? AudioSystem.NOT_SPECIFIED
+                    : Math.max(frameLength, length);
+        }
+        format = new AudioFormat(encoding, sampleRate, bits, totalChannels,
+                bytesPerSample * totalChannels, sampleRate, first.isBigEndian());
+        decoder = new PcmDecoder(format);
+        playbackFormat = new AudioFormat(sampleRate, 16, allMono ? 1 : 2, true, false);
+
+        int outputs = playbackFormat.getChannels();
+        outputOf = new int[totalChannels];
+        gainOf = new double[totalChannels];
+        for (int i = 0, channel = 0; i < sources.length; i++) {
+            int channels = channelsPerSource[i];
+            for (int c = 0; c < channels; c++, channel++) {
+                // Mono sources feed both sides; wider ones alternate left and right.
+                outputOf[channel] = channels == 1 ? -1 : c % outputs;
+                int sharing = channels == 1 ? 1 : (channels - c % outputs + outputs - 1) / outputs;
+                gainOf[channel] = 1.0 / (sources.length * sharing);
+            }
+        }
+        stream = new AudioInputStream(new CombinedInput(), format, frameLength);
+    }
+
+    /**
+     * Format of the combined stream: the channels of every source, interleaved.
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public int getSourceCount() {
+        return sources.length;
+    }
+
+    /**
+     * Channel count of every source, in order.
+     */
+    public int[] getChannelsPerSource() {
+        return channelsPerSource.clone();
+    }
+
+    /**
+     * The combined stream. Reads return whole frames and block until every source has delivered
+     * its share.
+     */
+    public AudioInputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Format produced by {@link #mixDown}.
+     */
+    public AudioFormat getPlaybackFormat() {
+        return playbackFormat;
+    }
+
+    /**
+     * Bytes {@link #mixDown} writes for {@code length} bytes of the combined stream.
+     */
+    public int playbackBytesFor(int length) {
+        return decoder.framesFor(length) * playbackFormat.getFrameSize();
+    }
+
+    /**
+     * Mixes {@code length} bytes of the combined stream into {@link #getPlaybackFormat()} and
+     * returns the number of bytes written to {@code out}.
+     */
+    public int mixDown(byte[] combined, int length, byte[] out) {
+        int channels = format.getChannels();
+        int outputs = playbackFormat.getChannels();
+        int frames = decoder.framesFor(length);
+        if (samples.length < frames * channels) {
+            samples = new double[frames * channels];
+        }
+        if (mix.length < outputs) {
+            mix = new double[outputs];
+        }
+        decoder.decodeInterleaved(combined, 0, length, samples);
+        int o = 0;
+        for (int f = 0, s = 0; f < frames; f++) {
+            for (int k = 0; k < outputs; k++) {
+                mix[k] = 0;
+            }
+            for (int c = 0; c < channels; c++, s++) {
+                double v = samples[s] * gainOf[c];
+                if (outputOf[c] < 0) {
+                    for (int k = 0; k < outputs; k++) {
+                        mix[k] += v;
+                    }
+                } else {
+                    mix[outputOf[c]] += v;
+                }
+            }
+            for (int k = 0; k < outputs; k++) {
+                int v = (int) Math.round(mix[k] * 32768);
+                v = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+                out[o++] = (byte) v;
+                out[o++] = (byte) (v >> 8);
+            }
+        }
+        return o;
+    }
+
+    // Reads up to 'frames' frames of one source, fewer only at its end.
+    private int readSource(int index, int frames) throws IOException {
+        int frameSize = sourceFrameSizes[index];
+        int wanted = frames * frameSize;
+        if (sourceBuffers[index] == null || sourceBuffers[index].length < wanted) {
+            sourceBuffers[index] = new byte[wanted];
+        }
+        byte[] buffer = sourceBuffers[index];
+        int filled = 0;
+        while (filled < wanted) {
+            int n = sources[index].read(buffer, filled, wanted - filled);
+            if (n < 0) {
+                break;
+            }
+            filled += n;
+        }
+        return filled / frameSize;
+    }
+
+    private int readCombined(byte[] b, int off, int len) throws IOException {
+        int frameSize = format.getFrameSize();
+        int frames = len / frameSize;
+        if (frames == 0) {
+            return 0;
+        }
+        int produced = 0;
+        for (int i = 0; i < sources.length; i++) {
+            sourceFrames[i] = readSource(i, frames);
+            produced = Math.max(produced, sourceFrames[i]);
+        }
+        if (produced == 0) {
+            return -1;
+        }
+        for (int f = 0, o = off; f < produced; f++) {
+            for (int i = 0; i < sources.length; i++) {
+                int size = sourceFrameSizes[i];
+                if (f < sourceFrames[i]) {
+                    System.arraycopy(sourceBuffers[i], f * size, b, o, size);
+                } else {
+                    // Signed and float PCM are silent at zero
+                    Arrays.fill(b, o, o + size, (byte) 0);
+                }
+                o += size;
+            }
+        }
+        return produced * frameSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (AudioInputStream source : sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private final class CombinedInput extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return readCombined(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            SourceMixer.this.close();
+        }
+    }
+}
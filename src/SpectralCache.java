@@ -0,0 +1,328 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Per-frame band levels and per-band statistics of one audio file, persisted to a binary sidecar
+ * next to the file so replays can skip the preprocessing pass.
+ * A sidecar is only accepted if it was produced from the same file content (SHA-256), STFT
+ * parameters and band layout. Layout, big-endian:
+ * <pre>
+ * int magic, int version, byte[32] contentHash, int fftSize, int hopSize, int window,
+ * int numBands, double[numBands] bandFreqLow, double[numBands] bandFreqHigh, double floorQuantile,
+ * int frameCount, double[numBands] min, double[numBands] max, double[numBands] floor,
+ * float[frameCount * numBands] frames
+ * </pre>
+ */
+public class SpectralCache {
+
+    public static final String SUFFIX = ".spectra";
+
+    private static final int MAGIC = 0x53435643;
+    private static final int VERSION = 2;
+    private static final int HASH_BYTES = 32;
+    private static final long HASH_WINDOW = 64L * 1024 * 1024;
+    private static final int WRITE_CHUNK = 64 * 1024;
+
+    private final byte[] contentHash;
+    private final int fftSize;
+    private final int hopSize;
+    private final WindowFunction window;
+    private final double[] bandFreqLow;
+    private final double[] bandFreqHigh;
+    private final double floorQuantile;
+    private final int numBands;
+    private final int frameCount;
+    private final double[] minVolumes;
+    private final double[] maxVolumes;
+    private final double[] floorVolumes;
+    private final FloatBuffer frames;
+
+    private SpectralCache(byte[] contentHash, int fftSize, int hopSize, WindowFunction window,
+                          double[] bandFreqLow, double[] bandFreqHigh, double floorQuantile,
+                          int frameCount, double[] minVolumes, double[] maxVolumes,
+                          double[] floorVolumes, FloatBuffer frames) {
+        this.contentHash = contentHash;
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.bandFreqLow = bandFreqLow;
+        this.bandFreqHigh = bandFreqHigh;
+        this.floorQuantile = floorQuantile;
+        this.numBands = bandFreqLow.length;
+        this.frameCount = frameCount;
+        this.minVolumes = minVolumes;
+        this.maxVolumes = maxVolumes;
+        this.floorVolumes = floorVolumes;
+        this.frames = frames;
+    }
+
+    public static File sidecarFor(File audioFile) {
+        return new File(audioFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * SHA-256 of the file content, read through memory-mapped windows.
+     */
+    public static byte[] contentHash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_WINDOW) {
+                long length = Math.min(HASH_WINDOW, size - position);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Loads a sidecar if it exists and matches the given content hash, STFT parameters, band
+     * layout and floor quantile; returns {@code null} otherwise.
+     */
+    public static SpectralCache load(File sidecar, byte[] contentHash, int fftSize, int hopSize,
+                                     WindowFunction window, double[] bandFreqLow,
+                                     double[] bandFreqHigh, double floorQuantile)
+            throws IOException {
+        if (!sidecar.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(sidecar.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    contentHash, fftSize, hopSize, window, bandFreqLow, bandFreqHigh,
+                    floorQuantile);
+        } catch (BufferUnderflowException e) {
+            // Truncated sidecar, e.g. from an interrupted write.
+            return null;
+        }
+    }
+
+    private static SpectralCache read(ByteBuffer buffer, byte[] contentHash, int fftSize,
+                                      int hopSize, WindowFunction window, double[] bandFreqLow,
+                                      double[] bandFreqHigh, double floorQuantile) {
+        if (buffer.remaining() < 16 + HASH_BYTES
+                || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        byte[] hash = new byte[HASH_BYTES];
+        buffer.get(hash);
+        if (!Arrays.equals(hash, contentHash) || buffer.getInt() != fftSize
+                || buffer.getInt() != hopSize || buffer.getInt() != window.ordinal()) {
+            return null;
+        }
+        int numBands = buffer.getInt();
+        if (numBands != bandFreqLow.length) {
+            return null;
+        }
+        for (int i = 0; i < numBands; i++) {
+            if (buffer.getDouble() != bandFreqLow[i]) return null;
+        }
+        for (int i = 0; i < numBands; i++) {
+            if (buffer.getDouble() != bandFreqHigh[i]) return null;
+        }
+        if (buffer.getDouble() != floorQuantile) {
+            return null;
+        }
+        int frameCount = buffer.getInt();
+        if (frameCount < 0) {
+            return null;
+        }
+        double[] min = readDoubles(buffer, numBands);
+        double[] max = readDoubles(buffer, numBands);
+        double[] floor = readDoubles(buffer, numBands);
+        if (buffer.remaining() < (long) frameCount * numBands * 4) {
+            return null;
+        }
+        FloatBuffer frames = buffer.slice().asFloatBuffer();
+        frames.limit(frameCount * numBands);
+        return new SpectralCache(hash, fftSize, hopSize, window, bandFreqLow.clone(),
+                bandFreqHigh.clone(), floorQuantile, frameCount, min, max, floor, frames);
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = buffer.getDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Writes this cache to {@code sidecar}. The data goes to a temporary file next to it first,
+     * which replaces the sidecar only once complete and on disk, so an interrupted write never
+     * leaves a sidecar behind that looks valid.
+     */
+    public void write(File sidecar) throws IOException {
+        Path target = sidecar.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), sidecar.getName(), ".tmp");
+        try {
+            // Written through the channel in bounded chunks rather than through a mapping, which
+            // would keep the file open until collected and block the rename on some platforms.
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                int headerBytes = 4 + 4 + HASH_BYTES + 4 + 4 + 4 + 4 + 16 * numBands + 8 + 4
+                        + 24 * numBands;
+                ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(WRITE_CHUNK, headerBytes));
+                buffer.putInt(MAGIC).putInt(VERSION).put(contentHash);
+                buffer.putInt(fftSize).putInt(hopSize).putInt(window.ordinal()).putInt(numBands);
+                for (double f : bandFreqLow) buffer.putDouble(f);
+                for (double f : bandFreqHigh) buffer.putDouble(f);
+                buffer.putDouble(floorQuantile).putInt(frameCount);
+                for (double v : minVolumes) buffer.putDouble(v);
+                for (double v : maxVolumes) buffer.putDouble(v);
+                for (double v : floorVolumes) buffer.putDouble(v);
+                writeFully(channel, buffer);
+                FloatBuffer source = frames.duplicate();
+                source.rewind();
+                while (source.hasRemaining()) {
+                    buffer.clear();
+                    FloatBuffer chunk = buffer.asFloatBuffer();
+                    int count = Math.min(chunk.capacity(), source.remaining());
+                    FloatBuffer part = source.duplicate();
+                    part.limit(part.position() + count);
+                    chunk.put(part);
+                    source.position(source.position() + count);
+                    buffer.position(4 * count);
+                    writeFully(channel, buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Writes the bytes before the buffer's position
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public int getNumBands() {
+        return numBands;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Samples between consecutive frames.
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public double getFloorQuantile() {
+        return floorQuantile;
+    }
+
+    public double[] getMinVolumes() {
+        return minVolumes.clone();
+    }
+
+    public double[] getMaxVolumes() {
+        return maxVolumes.clone();
+    }
+
+    /**
+     * Per-band level at {@link #getFloorQuantile()}, used as the visual floor.
+     */
+    public double[] getFloorVolumes() {
+        return floorVolumes.clone();
+    }
+
+    /**
+     * Copies the band levels of frame {@code index} into {@code out}.
+     */
+    public void getFrame(int index, double[] out) {
+        int base = index * numBands;
+        for (int b = 0; b < numBands; b++) {
+            out[b] = frames.get(base + b);
+        }
+    }
+
+    /**
+     * Collects per-frame band levels during a preprocessing pass.
+     */
+    public static class Builder {
+        private final byte[] contentHash;
+        private final int fftSize;
+        private final int hopSize;
+        private final WindowFunction window;
+        private final double[] bandFreqLow;
+        private final double[] bandFreqHigh;
+        private final double floorQuantile;
+        private final int numBands;
+        private final BandStatistics statistics;
+        private float[] data;
+        private int frameCount;
+
+        public Builder(byte[] contentHash, int fftSize, int hopSize, WindowFunction window,
+                       double[] bandFreqLow, double[] bandFreqHigh, double floorQuantile) {
+            this.contentHash = contentHash;
+            this.fftSize = fftSize;
+            this.hopSize = hopSize;
+            this.window = window;
+            this.bandFreqLow = bandFreqLow.clone();
+            this.bandFreqHigh = bandFreqHigh.clone();
+            this.floorQuantile = floorQuantile;
+            this.numBands = bandFreqLow.length;
+            this.statistics = new BandStatistics(numBands, floorQuantile);
+            this.data = new float[numBands * 1024];
+        }
+
+        public void add(double[] volumes) {
+            int base = frameCount * numBands;
+            if (base + numBands > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            for (int b = 0; b < numBands; b++) {
+                data[base + b] = (float) volumes[b];
+            }
+            frameCount++;
+            statistics.add(volumes);
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * Snapshot of the frames and streaming band statistics collected so far.
+         */
+        public SpectralCache build() {
+            double[] min = new double[numBands];
+            double[] max = new double[numBands];
+            double[] floor = new double[numBands];
+            if (frameCount > 0) {
+                for (int b = 0; b < numBands; b++) {
+                    min[b] = statistics.getMin(b);
+                    max[b] = statistics.getMax(b);
+                    floor[b] = statistics.getQuantile(b, 0);
+                }
+            }
+            FloatBuffer frames = FloatBuffer.wrap(data, 0, frameCount * numBands).slice();
+            return new SpectralCache(contentHash, fftSize, hopSize, window, bandFreqLow,
+                    bandFreqHigh, floorQuantile, frameCount, min, max, floor, frames);
+        }
+    }
+}
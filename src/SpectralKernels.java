@@ -0,0 +1,82 @@
+/**
+ * The inner loops of the analysis path: FFT butterflies, splitting the packed real spectrum into
+ * magnitudes, band sums of squares and 16-bit PCM decoding. {@link #get()} picks the
+ * implementation once per JVM: {@code VectorSpectralKernels} (built from {@code src-vector} on
+ * JDK 17+) when the {@code jdk.incubator.vector} module is present, {@link ScalarSpectralKernels}
+ * otherwise. The system property {@code visualizer.kernels=scalar|vector} overrides the choice.
+ * Implementations are stateless and thread-safe. Butterflies, magnitudes and decoding match the
+ * scalar kernels bit for bit; vector sums of squares add in a different order and agree to
+ * rounding.
+ */
+public interface SpectralKernels {
+
+    /**
+     * The kernels in use.
+     */
+    static SpectralKernels get() {
+        return Selection.KERNELS;
+    }
+
+    /**
+     * Short description for logs, e.g. {@code "scalar"}.
+     */
+    String getName();
+
+    /**
+     * All radix-2 stages of an in-place complex FFT of size {@code n} whose input is already in
+     * bit-reversed order. The twiddles of the stage with half-block size {@code h} are stored
+     * contiguously at {@code stageCos[h .. 2h)} and {@code stageSin[h .. 2h)}.
+     */
+    void butterflies(double[] re, double[] im, int n, double[] stageCos, double[] stageSin);
+
+    /**
+     * Splits bins {@code 1 .. half - 1} of the packed transform of a real signal of length
+     * {@code 2 * half} and writes their magnitudes.
+     */
+    void splitMagnitudes(double[] re, double[] im, int half, double[] cos, double[] sin,
+                         double[] magnitudes);
+
+    /**
+     * Sum of {@code values[i]^2} over {@code [from, to)}.
+     */
+    double sumOfSquares(double[] values, int from, int to);
+
+    /**
+     * Sum of {@code weights[weightOffset + k] * values[from + k]^2} over {@code k < count}: one
+     * row of a sparse filterbank applied to a magnitude spectrum.
+     */
+    double weightedSumOfSquares(double[] values, int from, double[] weights, int weightOffset,
+                                int count);
+
+    /**
+     * Decodes {@code count} little-endian 16-bit samples starting at byte {@code offset},
+     * XOR-ing each with {@code flip} (nonzero for unsigned PCM), scaled to [-1, 1).
+     */
+    void decodeInt16LE(byte[] buffer, int offset, int count, double[] out, int flip);
+
+    /**
+     * Holds the implementation chosen at first use.
+     */
+    final class Selection {
+        static final SpectralKernels KERNELS = select();
+
+        private Selection() {
+        }
+
+        private static SpectralKernels select() {
+            String requested = System.getProperty("visualizer.kernels", "auto");
+            if (!requested.equals("scalar")) {
+                try {
+                    return (SpectralKernels) Class.forName("VectorSpectralKernels")
+                            .getConstructor().newInstance();
+                } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                    // Not built, module not added (--add-modules jdk.incubator.vector) or no SIMD
+                    if (requested.equals("vector")) {
+                        System.err.println("Vector kernels unavailable, using scalar: " + e);
+                    }
+                }
+            }
+            return new ScalarSpectralKernels();
+        }
+    }
+}
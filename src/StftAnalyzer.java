@@ -0,0 +1,105 @@
+import java.util.Arrays;
+
+/**
+ * Short-time Fourier transform over a continuous sample stream.
+ * Samples are appended to a ring buffer holding the last {@code fftSize} samples; every
+ * {@code hopSize} samples the buffer is windowed and transformed, so the FFT size (frequency
+ * resolution) and the hop (update rate) are independent of how the stream happens to be chunked.
+ * The window is precomputed and scaled by its coherent gain so band levels stay comparable across
+ * window types. Nothing is allocated per hop. Not thread-safe.
+ */
+public class StftAnalyzer {
+
+    /**
+     * Receives the magnitude spectrum of each hop. The array is reused for the next hop.
+     */
+    public interface SpectrumListener {
+        void onSpectrum(double[] magnitudes);
+    }
+
+    private final int fftSize;
+    private final int hopSize;
+    private final WindowFunction window;
+    private final double[] coefficients;
+    private final double[] ring;
+    private final int mask;
+    private final double[] frame;
+    private final double[] magnitudes;
+    private final FFT fft;
+    private int writePosition;
+    private int sinceHop;
+
+    public StftAnalyzer(int fftSize, int hopSize, WindowFunction window) {
+        if (hopSize <= 0 || hopSize > fftSize) {
+            throw new IllegalArgumentException("Hop size must be in [1, " + fftSize + "]: "
+                    + hopSize);
+        }
+        this.fft = new FFT(fftSize);
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.coefficients = window.normalizedCoefficients(fftSize);
+        this.ring = new double[fftSize];
+        this.mask = fftSize - 1;
+        this.frame = new double[fftSize];
+        this.magnitudes = new double[fft.getBinCount()];
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public WindowFunction getWindow() {
+        return window;
+    }
+
+    public int getBinCount() {
+        return fft.getBinCount();
+    }
+
+    /**
+     * Appends {@code count} samples and calls {@code listener} once for every completed hop.
+     */
+    public void process(double[] samples, int count, SpectrumListener listener) {
+        int offset = 0;
+        while (offset < count) {
+            int n = Math.min(count - offset, hopSize - sinceHop);
+            for (int i = 0; i < n; i++) {
+                ring[(writePosition + i) & mask] = samples[offset + i];
+            }
+            writePosition = (writePosition + n) & mask;
+            sinceHop += n;
+            offset += n;
+            if (sinceHop == hopSize) {
+                sinceHop = 0;
+                transform();
+                listener.onSpectrum(magnitudes);
+            }
+        }
+    }
+
+    private void transform() {
+        // Oldest sample first: the ring starts at the current write position.
+        int head = fftSize - writePosition;
+        for (int i = 0; i < head; i++) {
+            frame[i] = ring[writePosition + i] * coefficients[i];
+        }
+        for (int i = head; i < fftSize; i++) {
+            frame[i] = ring[i - head] * coefficients[i];
+        }
+        fft.magnitudes(frame, fftSize, magnitudes);
+    }
+
+    /**
+     * Clears the sample history, e.g. after a seek.
+     */
+    public void reset() {
+        Arrays.fill(ring, 0);
+        writePosition = 0;
+        sinceHop = 0;
+    }
+}
@@ -0,0 +1,174 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+
+/**
+ * Blits band tiles onto the panel. When the screen offers accelerated {@link VolatileImage}s each
+ * band keeps one in video memory, re-uploaded only when the band's tile changes or the surface is
+ * lost; otherwise tiles are drawn directly, which Java2D keeps fast for opaque images in the
+ * screen's native format (see {@link #toCompatible}). Tiles are only scaled when their size
+ * differs from the target rectangle, e.g. right after a resize. Used from the EDT only.
+ */
+public class TileCompositor {
+
+    private GraphicsConfiguration config;
+    private boolean accelerated;
+    private VolatileImage[] surfaces;
+    private BufferedImage[] uploaded;
+
+    private long blits;
+    private long scaledBlits;
+    private long uploads;
+    private long blitNanos;
+
+    public TileCompositor(int numBands) {
+        surfaces = new VolatileImage[numBands];
+        uploaded = new BufferedImage[numBands];
+    }
+
+    /**
+     * Switches to the given screen, or to the software path for {@code null}. Called when the
+     * panel is added to a window or moved to another screen.
+     */
+    public void setGraphicsConfiguration(GraphicsConfiguration graphicsConfiguration) {
+        if (graphicsConfiguration == config) {
+            return;
+        }
+        config = graphicsConfiguration;
+        accelerated = false;
+        for (int i = 0; i < surfaces.length; i++) {
+            release(i);
+        }
+        if (config != null && !GraphicsEnvironment.isHeadless()) {
+            VolatileImage probe = config.createCompatibleVolatileImage(1, 1, Transparency.OPAQUE);
+            accelerated = probe.getCapabilities().isAccelerated();
+            probe.flush();
+        }
+    }
+
+    /**
+     * Returns {@code tile} itself if it is already an opaque image in the screen's native format
+     * (or {@code TYPE_INT_RGB} without a screen), otherwise a converted copy. May be called from
+     * any thread.
+     */
+    public static BufferedImage toCompatible(BufferedImage tile,
+                                             GraphicsConfiguration graphicsConfiguration) {
+        if (graphicsConfiguration == null) {
+            if (tile.getType() == BufferedImage.TYPE_INT_RGB) {
+                return tile;
+            }
+            BufferedImage copy = new BufferedImage(tile.getWidth(), tile.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            copy(tile, copy);
+            return copy;
+        }
+        if (tile.getColorModel().equals(graphicsConfiguration.getColorModel(Transparency.OPAQUE))) {
+            return tile;
+        }
+        BufferedImage copy = graphicsConfiguration.createCompatibleImage(tile.getWidth(),
+                tile.getHeight(), Transparency.OPAQUE);
+        copy(tile, copy);
+        return copy;
+    }
+
+    private static void copy(BufferedImage source, BufferedImage target) {
+        Graphics2D g = target.createGraphics();
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+    }
+
+    /**
+     * Draws the tile of band {@code bandIndex} into the given rectangle.
+     */
+    public void draw(Graphics2D g, int bandIndex, BufferedImage tile, int x, int y, int width,
+                     int height) {
+        long start = System.nanoTime();
+        boolean exact = tile.getWidth() == width && tile.getHeight() == height;
+        if (!exact) {
+            g.drawImage(tile, x, y, width, height, null);
+            scaledBlits++;
+        } else if (accelerated) {
+            drawAccelerated(g, bandIndex, tile, x, y);
+        } else {
+            g.drawImage(tile, x, y, null);
+        }
+        blits++;
+        blitNanos += System.nanoTime() - start;
+    }
+
+    private void drawAccelerated(Graphics2D g, int bandIndex, BufferedImage tile, int x, int y) {
+        if (bandIndex >= surfaces.length) {
+            // More strips than at construction
+            surfaces = Arrays.copyOf(surfaces, bandIndex + 1);
+            uploaded = Arrays.copyOf(uploaded, bandIndex + 1);
+        }
+        VolatileImage surface = surfaces[bandIndex];
+        do {
+            if (surface == null || surface.getWidth() != tile.getWidth()
+                    || surface.getHeight() != tile.getHeight()) {
+                release(bandIndex);
+                surface = config.createCompatibleVolatileImage(tile.getWidth(),
+                        tile.getHeight(), Transparency.OPAQUE);
+                surfaces[bandIndex] = surface;
+            }
+            int status = surface.validate(config);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                release(bandIndex);
+                surface = null;
+                continue;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED || uploaded[bandIndex] != tile) {
+                Graphics2D sg = surface.createGraphics();
+                sg.drawImage(tile, 0, 0, null);
+                sg.dispose();
+                uploaded[bandIndex] = tile;
+                uploads++;
+            }
+            g.drawImage(surface, x, y, null);
+        } while (surface == null || surface.contentsLost());
+    }
+
+    private void release(int bandIndex) {
+        if (surfaces[bandIndex] != null) {
+            surfaces[bandIndex].flush();
+            surfaces[bandIndex] = null;
+        }
+        uploaded[bandIndex] = null;
+    }
+
+    /**
+     * Whether tiles are composited through video-memory surfaces.
+     */
+    public boolean isAccelerated() {
+        return accelerated;
+    }
+
+    /**
+     * Tiles drawn so far, including scaled ones.
+     */
+    public long getBlits() {
+        return blits;
+    }
+
+    /**
+     * Tiles that had to be scaled because their size did not match the band.
+     */
+    public long getScaledBlits() {
+        return scaledBlits;
+    }
+
+    /**
+     * Tile uploads into video memory (accelerated path only).
+     */
+    public long getUploads() {
+        return uploads;
+    }
+
+    /**
+     * Total time spent in {@link #draw}.
+     */
+    public long getBlitNanos() {
+        return blitNanos;
+    }
+}
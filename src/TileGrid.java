@@ -0,0 +1,66 @@
+/**
+ * Places band tiles on a canvas. Every strip gets an equal share of the height, and its bands fill
+ * it row by row in a grid whose column count gives the largest visible carpet: a carpet is as wide
+ * as its tile and clipped at the tile's bottom, so a few bands on a wide canvas stay one row of
+ * columns, while more bands wrap into a grid of near-square tiles instead of slivers. Tile
+ * {@code i} is band {@code i % numBands} of strip {@code i / numBands}. Immutable.
+ */
+public final class TileGrid {
+
+    private final int numBands;
+    private final int columns;
+    private final int rows;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    public TileGrid(int numBands, int strips, int width, int height) {
+        this.numBands = numBands;
+        int stripHeight = height / Math.max(1, strips);
+        int bestColumns = numBands;
+        int bestSize = -1;
+        boolean bestFits = false;
+        for (int c = 1; c <= numBands; c++) {
+            int w = width / c;
+            int h = stripHeight / ((numBands + c - 1) / c);
+            int size = Math.min(w, h);
+            boolean fits = w <= h;
+            // On a tie prefer tiles whose carpet is not clipped.
+            if (size > bestSize || (size == bestSize && fits && !bestFits)) {
+                bestColumns = c;
+                bestSize = size;
+                bestFits = fits;
+            }
+        }
+        this.columns = bestColumns;
+        this.rows = (numBands + columns - 1) / columns;
+        this.tileWidth = width / columns;
+        this.tileHeight = stripHeight / rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Rows of tiles per strip.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int getX(int tile) {
+        return tile % numBands % columns * tileWidth;
+    }
+
+    public int getY(int tile) {
+        return (tile / numBands * rows + tile % numBands / columns) * tileHeight;
+    }
+}
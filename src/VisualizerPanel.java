@@ -1,58 +1,426 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Draws one carpet tile per band, in a block of rows per strip when a frame holds several strips
+ * of {@link #getNumBands()} bands (see {@link ChannelMode}); each strip's bands are laid out in a
+ * {@link TileGrid}. The analysis side publishes each frame as an immutable
+ * {@link FrameSnapshot} through an atomic reference, so painting always sees the depths and tiles
+ * of one complete frame without taking locks. Painting is change-driven: a band is only
+ * re-rendered when its depth changes, only the rectangles of changed bands are repainted, and
+ * repaints are coalesced to at most one per display refresh. Tiles are always produced off the
+ * event dispatch thread, by the caller of {@link #updateFrame} or, after a resize, by a background
+ * thread.
+ * <p>
+ * Carpets never recurse past what a tile can show (see {@link FractalGenerator#visibleDepth}), and
+ * a {@link FrameBudget} measures tile production and painting against the target frame rate; on
+ * slow machines it lowers depths, updates only half of the bands per frame or publishes fewer
+ * frames until the rate holds. The depths of a published frame are the ones actually shown.
+ */
 public class VisualizerPanel extends JPanel {
 
-    private BufferedImage[] fractalImages;
-    private int[] currentDepths;
-    private int numBands;
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private static final int OVERLAY_REFRESH_MILLIS = 500;
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+
+    // Bands per strip; the strip count follows the length of the published depths
+    private final int numBands;
+    private final FractalTileCache tileCache;
+    private final TileCompositor compositor;
+    private final AtomicReference<FrameSnapshot> frame;
+    // Last snapshot whose changes were passed to repaint; EDT only
+    private FrameSnapshot flushed;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Timer flushTimer;
+    private final ExecutorService tileExecutor;
+    private volatile long refreshNanos = 1_000_000_000L / DEFAULT_REFRESH_RATE;
+    private long lastFlushNanos;
+    private final FrameBudget frameBudget;
+    // Publishing side of the frame budget; touched only by callers of updateFrame
+    private volatile long lastPublishNanos;
+    private volatile int bandPhase;
+
+    private PipelineMetrics metricsOverlay;
+    private volatile PipelineMetrics latencyMetrics;
+    // Sequence of the last painted frame, to record display latency once per frame; EDT only
+    private long paintedSequence;
+    private final Timer overlayTimer;
+    // Area covered by the overlay when it was last painted; EDT only
+    private final Rectangle overlayBounds = new Rectangle(0, 0, 640, 160);
 
     public VisualizerPanel(int numBands) {
-        this.numBands = numBands;
-        fractalImages = new BufferedImage[numBands];
-        currentDepths = new int[numBands];
+        this(new SessionConfig(numBands));
+    }
+
+    /**
+     * Panel for the bands, tile renderer and tile cache budget of {@code config}.
+     */
+    public VisualizerPanel(SessionConfig config) {
+        this.numBands = config.getNumBands();
+        frame = new AtomicReference<>(FrameSnapshot.empty(numBands));
+        tileCache = new FractalTileCache(config.getTileCacheBytes(), config.getRenderer());
+        compositor = new TileCompositor(numBands);
+        frameBudget = new FrameBudget(config.getTargetFrameRate());
+        setBackground(Color.BLACK);
+        setOpaque(true);
+
+        // One thread at most, and none while idle
+        tileExecutor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "tile-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        flushTimer = new Timer(0, e -> flush());
+        flushTimer.setRepeats(false);
+        overlayTimer = new Timer(OVERLAY_REFRESH_MILLIS, e -> repaint(overlayBounds));
+
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                // Tiles are rendered at panel size; anything cached for the old size is stale.
+                // The old tiles are shown scaled until the new ones are ready.
+                tileCache.clear();
+                if (!tileExecutor.isShutdown()) {
+                    tileExecutor.execute(VisualizerPanel.this::refresh);
+                }
+            }
+        });
+    }
 
-        Timer drawingTimer = new Timer(5, e -> repaint());
-        drawingTimer.start();
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        compositor.setGraphicsConfiguration(config);
+        tileCache.setGraphicsConfiguration(config);
+        int rate = config == null ? DisplayMode.REFRESH_RATE_UNKNOWN
+                : config.getDevice().getDisplayMode().getRefreshRate();
+        refreshNanos = 1_000_000_000L / (rate > 0 ? rate : DEFAULT_REFRESH_RATE);
     }
 
     @Override
     protected void paintComponent(Graphics g) {
+        long paintStart = System.nanoTime();
         super.paintComponent(g);
-        setBackground(Color.BLACK);
         Graphics2D g2d = (Graphics2D) g;
+        FrameSnapshot snapshot = frame.get();
+        PipelineMetrics latency = latencyMetrics;
+        if (latency != null && snapshot.getSequence() != paintedSequence
+                && snapshot.getCaptureNanos() != 0) {
+            latency.lap(PipelineMetrics.Stage.DISPLAY, snapshot.getCaptureNanos());
+        }
+        paintedSequence = snapshot.getSequence();
 
-        int panelWidth = getWidth() / numBands;
-        for (int i = 0; i < numBands; i++) {
-            if (fractalImages[i] == null && currentDepths[i] > 0) {
-                fractalImages[i] = FractalGenerator.generateFractalImage(
-                    currentDepths[i],
-                    panelWidth,
-                    getHeight(),
-                    i
-                );
+        TileGrid grid = gridFor(snapshot.getNumBands());
+        int tileWidth = grid.getTileWidth();
+        int tileHeight = grid.getTileHeight();
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            return;
+        }
+        Rectangle clip = g2d.getClipBounds();
+        for (int i = 0; i < snapshot.getNumBands(); i++) {
+            int x = grid.getX(i);
+            int y = grid.getY(i);
+            if (clip != null && !clip.intersects(x, y, tileWidth, tileHeight)) {
+                continue;
             }
-            if (fractalImages[i] != null) {
-                g2d.drawImage(
-                    fractalImages[i],
-                    i * panelWidth,
-                    0,
-                    panelWidth,
-                    getHeight(),
-                    null
-                );
+            // Missing tiles are produced off the EDT; the band stays blank until then.
+            BufferedImage image = snapshot.getTile(i);
+            if (image != null) {
+                compositor.draw(g2d, i, image, x, y, tileWidth, tileHeight);
             }
         }
+        if (metricsOverlay != null && (clip == null || clip.intersects(overlayBounds))) {
+            paintOverlay(g2d);
+        }
+        frameBudget.recordPaint(System.nanoTime() - paintStart);
+    }
+
+    private void paintOverlay(Graphics2D g2d) {
+        String[] lines = (metricsOverlay.format() + String.format(Locale.ROOT,
+                "blits=%d scaled=%d uploads=%d mean=%.1fus accelerated=%b",
+                compositor.getBlits(), compositor.getScaledBlits(), compositor.getUploads(),
+                compositor.getBlits() == 0 ? 0
+                        : compositor.getBlitNanos() / 1e3 / compositor.getBlits(),
+                compositor.isAccelerated()) + "\n" + frameBudget.describe()).split("\\R");
+        g2d.setFont(OVERLAY_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, fm.stringWidth(line));
+        }
+        int lineHeight = fm.getHeight();
+        Rectangle bounds = new Rectangle(0, 0, width + 16, lines.length * lineHeight + 12);
+        if (!bounds.equals(overlayBounds)) {
+            // Clear what the previous, larger overlay covered on the next refresh.
+            repaint(overlayBounds.union(bounds));
+            overlayBounds.setBounds(bounds);
+        }
+        g2d.setColor(new Color(0, 0, 0, 170));
+        g2d.fill(bounds);
+        g2d.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g2d.drawString(lines[i], 8, 6 + fm.getAscent() + i * lineHeight);
+        }
     }
 
+    /**
+     * Shows a live summary of {@code metrics} in the top left corner, refreshed twice a second,
+     * or hides it for {@code null}. EDT only.
+     */
+    public void setMetricsOverlay(PipelineMetrics metrics) {
+        metricsOverlay = metrics;
+        if (metrics != null) {
+            overlayTimer.start();
+        } else {
+            overlayTimer.stop();
+        }
+        repaint(overlayBounds);
+    }
+
+    /**
+     * Records the capture-to-display latency of frames published with a capture time as
+     * {@link PipelineMetrics.Stage#DISPLAY} in {@code metrics}, or stops for {@code null}.
+     */
+    public void setLatencyMetrics(PipelineMetrics metrics) {
+        latencyMetrics = metrics;
+    }
+
+    /**
+     * Publishes the depths of all bands as one frame, fetching changed tiles on the calling
+     * thread. {@code depths} holds the bands of every strip, strip after strip. Bands whose depth
+     * is unchanged keep their tile and are not repainted; if nothing changed no frame is
+     * published.
+     */
+    public void updateFrame(int[] depths) {
+        updateFrame(depths, 0);
+    }
+
+    /**
+     * Variant of {@link #updateFrame(int[])} for captured audio; {@code captureNanos} is the
+     * {@link System#nanoTime()} at which the newest sample behind {@code depths} was captured.
+     */
+    public void updateFrame(int[] depths, long captureNanos) {
+        long start = System.nanoTime();
+        long interval = frameBudget.getMinFrameIntervalNanos();
+        if (interval > 0 && start - lastPublishNanos < interval) {
+            return;
+        }
+        lastPublishNanos = start;
+        bandPhase ^= 1;
+        FrameSnapshot previous;
+        do {
+            previous = frame.get();
+        } while (!publish(previous, degrade(previous, depths), captureNanos));
+        frameBudget.recordPublish(System.nanoTime() - start);
+    }
+
+    // The depths to show at the current degradation level: capped to what the tiles can show,
+    // lowered, and with every other band keeping its previous depth when bands are skipped.
+    private int[] degrade(FrameSnapshot previous, int[] depths) {
+        int reduction = frameBudget.getDepthReduction();
+        boolean skip = frameBudget.getBandStride() > 1 && previous.getNumBands() == depths.length;
+        int width = gridFor(depths.length).getTileWidth();
+        int[] shown = new int[depths.length];
+        for (int i = 0; i < depths.length; i++) {
+            if (skip && (i & 1) != bandPhase) {
+                shown[i] = previous.getDepth(i);
+                continue;
+            }
+            int depth = width > 0 ? FractalGenerator.visibleDepth(depths[i], width) : depths[i];
+            // A band that shows anything keeps at least one level.
+            shown[i] = Math.max(Math.min(depth, 1), depth - reduction);
+        }
+        return shown;
+    }
+
+    /**
+     * Changes the depth of a single band, keeping the others.
+     */
     public void updateFractalImage(int bandIndex, int depth) {
-        currentDepths[bandIndex] = depth;
-        fractalImages[bandIndex] = FractalGenerator.generateFractalImage(
-            depth,
-            getWidth() / numBands,
-            getHeight(),
-            bandIndex
-        );
+        FrameSnapshot previous;
+        int[] depths;
+        do {
+            previous = frame.get();
+            depths = new int[previous.getNumBands()];
+            previous.getDepths(depths);
+            depths[bandIndex] = depth;
+        } while (!publish(previous, depths, 0));
+    }
+
+    /**
+     * The most recently published frame.
+     */
+    public FrameSnapshot getFrame() {
+        return frame.get();
+    }
+
+    // Re-renders the current depths at the current size, e.g. after a resize.
+    private void refresh() {
+        FrameSnapshot previous;
+        int[] depths;
+        do {
+            previous = frame.get();
+            depths = new int[previous.getNumBands()];
+            previous.getDepths(depths);
+        } while (!publish(previous, depths, previous.getCaptureNanos()));
+    }
+
+    // Publishes the frame following 'previous'. Returns false if another thread published first.
+    private boolean publish(FrameSnapshot previous, int[] depths, long captureNanos) {
+        TileGrid grid = gridFor(depths.length);
+        FrameSnapshot next = nextFrame(previous, depths, grid.getTileWidth(),
+                grid.getTileHeight(), captureNanos);
+        if (next == previous) {
+            return true;
+        }
+        if (!frame.compareAndSet(previous, next)) {
+            return false;
+        }
+        requestFlush();
+        return true;
+    }
+
+    // Returns 'previous' itself when nothing changed.
+    private FrameSnapshot nextFrame(FrameSnapshot previous, int[] depths, int width,
+                                    int height, long captureNanos) {
+        if (previous.getNumBands() != depths.length) {
+            // Strip count changed: every band of the new layout counts as changed.
+            int[] unset = new int[depths.length];
+            Arrays.fill(unset, -1);
+            previous = new FrameSnapshot(previous.getSequence(), 0, 0, unset,
+                    new BufferedImage[depths.length], 0);
+        }
+        boolean drawable = width > 0 && height > 0;
+        boolean resized = drawable
+                && (previous.getTileWidth() != width || previous.getTileHeight() != height);
+        int[] nextDepths = null;
+        BufferedImage[] nextTiles = null;
+        int count = depths.length;
+        for (int i = 0; i < count; i++) {
+            int depth = depths[i];
+            boolean stale = resized || (drawable && previous.getTile(i) == null);
+            if (depth == previous.getDepth(i) && !stale) {
+                continue;
+            }
+            if (nextDepths == null) {
+                nextDepths = new int[count];
+                previous.getDepths(nextDepths);
+                nextTiles = new BufferedImage[count];
+                for (int b = 0; b < count; b++) {
+                    nextTiles[b] = previous.getTile(b);
+                }
+            }
+            nextDepths[i] = depth;
+            if (drawable) {
+                // Colours follow the band, so strips read alike
+                nextTiles[i] = tileCache.get(depth, i % numBands, width, height);
+            }
+        }
+        if (nextDepths == null) {
+            return previous;
+        }
+        return new FrameSnapshot(previous.getSequence() + 1,
+                drawable ? width : previous.getTileWidth(),
+                drawable ? height : previous.getTileHeight(), nextDepths, nextTiles,
+                captureNanos);
+    }
+
+    private void requestFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::scheduleFlush);
+        }
+    }
+
+    // Runs on the EDT: flushes now, or at the next refresh slot if the last flush was too recent.
+    private void scheduleFlush() {
+        long wait = lastFlushNanos + refreshNanos - System.nanoTime();
+        if (wait <= 0) {
+            flush();
+        } else {
+            flushTimer.setInitialDelay((int) Math.max(1, wait / 1_000_000L));
+            flushTimer.restart();
+        }
+    }
+
+    // Repaints the bands whose tile differs from the last flushed frame.
+    private void flush() {
+        lastFlushNanos = System.nanoTime();
+        flushScheduled.set(false);
+        FrameSnapshot snapshot = frame.get();
+        FrameSnapshot previous = flushed;
+        flushed = snapshot;
+        if (previous == snapshot) {
+            return;
+        }
+        if (previous == null || previous.getNumBands() != snapshot.getNumBands()) {
+            repaint();
+            return;
+        }
+        TileGrid grid = gridFor(snapshot.getNumBands());
+        for (int i = 0; i < snapshot.getNumBands(); i++) {
+            if (snapshot.getTile(i) != previous.getTile(i)) {
+                repaint(grid.getX(i), grid.getY(i), grid.getTileWidth(), grid.getTileHeight());
+            }
+        }
+    }
+
+    private int stripsOf(int bands) {
+        return Math.max(1, bands / numBands);
+    }
+
+    // Tile placement for a frame of 'bands' depths at the current size
+    private TileGrid gridFor(int bands) {
+        return new TileGrid(numBands, stripsOf(bands), getWidth(), getHeight());
+    }
+
+    /**
+     * Bands per strip.
+     */
+    public int getNumBands() {
+        return numBands;
+    }
+
+    /**
+     * Stops the panel's timers and background thread and drops its cached tiles. Call on the EDT
+     * once the panel has been removed and will not be shown again.
+     */
+    public void dispose() {
+        flushTimer.stop();
+        overlayTimer.stop();
+        tileExecutor.shutdownNow();
+        tileCache.clear();
+    }
+
+    /**
+     * Current detail level: 0 for full detail up to {@link FrameBudget#MAX_LEVEL}.
+     */
+    public int getDegradationLevel() {
+        return frameBudget.getLevel();
+    }
+
+    public FrameBudget getFrameBudget() {
+        return frameBudget;
+    }
+
+    public FractalTileCache getTileCache() {
+        return tileCache;
+    }
+
+    public TileCompositor getCompositor() {
+        return compositor;
     }
 }
@@ -0,0 +1,193 @@
+import javax.sound.sampled.Mixer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One visualization: its audio sources, their {@link SessionConfig}, the {@link AudioProcessor}
+ * analysing it and the {@link VisualizerPanel} showing it. A session runs once: {@link #start}
+ * launches its I/O loop, {@link #stop} asks it to end, and {@link #await} waits until the loop has
+ * exited and the audio line and pipeline threads have been released.
+ */
+public class VisualizerSession {
+
+    public enum State { NEW, PREPROCESSING, RUNNING, FINISHED, STOPPED, FAILED }
+
+    /**
+     * Called on the session's I/O thread whenever the state changes.
+     */
+    public interface Listener {
+        void stateChanged(VisualizerSession session, State state);
+    }
+
+    // Files to play, or empty for live capture from 'pcmInput' if set, else from 'inputs'
+    private final List<String> audioFiles;
+    private final List<Mixer.Info> inputs;
+    private final PcmChannelInput pcmInput;
+    private final SessionConfig config;
+    private final VisualizerPanel panel;
+    private final AudioProcessor processor;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile State state = State.NEW;
+    private volatile Throwable failure;
+    private volatile Listener listener;
+
+    private VisualizerSession(List<String> audioFiles, List<Mixer.Info> inputs,
+                              PcmChannelInput pcmInput, SessionConfig config,
+                              VisualizerPanel panel) {
+        this.audioFiles = new ArrayList<>(audioFiles);
+        this.inputs = new ArrayList<>(inputs);
+        this.pcmInput = pcmInput;
+        this.config = config;
+        this.panel = panel;
+        this.processor = new AudioProcessor(panel, config);
+    }
+
+    /**
+     * Preprocesses and then plays {@code audioFile}.
+     */
+    public static VisualizerSession forFile(String audioFile, SessionConfig config,
+                                            VisualizerPanel panel) {
+        return forFiles(Collections.singletonList(audioFile), config, panel);
+    }
+
+    /**
+     * Preprocesses and then plays {@code audioFiles} together, each in its own strip or strips.
+     */
+    public static VisualizerSession forFiles(List<String> audioFiles, SessionConfig config,
+                                             VisualizerPanel panel) {
+        if (audioFiles.isEmpty()) {
+            throw new IllegalArgumentException("No audio files");
+        }
+        return new VisualizerSession(audioFiles, Collections.<Mixer.Info>emptyList(), null,
+                config, panel);
+    }
+
+    /**
+     * Captures from the default input line until stopped.
+     */
+    public static VisualizerSession forLiveInput(SessionConfig config, VisualizerPanel panel) {
+        return forLiveInputs(Collections.<Mixer.Info>emptyList(), config, panel);
+    }
+
+    /**
+     * Captures from the input lines of all {@code mixers} at once until stopped, e.g. several
+     * microphones of one installation; the default input line if the list is empty.
+     */
+    public static VisualizerSession forLiveInputs(List<Mixer.Info> mixers, SessionConfig config,
+                                                  VisualizerPanel panel) {
+        return new VisualizerSession(Collections.<String>emptyList(), mixers, null, config,
+                panel);
+    }
+
+    /**
+     * Visualizes raw PCM from another process until its writer closes the stream or the session
+     * is stopped. The session closes {@code input} when it ends.
+     */
+    public static VisualizerSession forPcmInput(PcmChannelInput input, SessionConfig config,
+                                                VisualizerPanel panel) {
+        return new VisualizerSession(Collections.<String>emptyList(),
+                Collections.<Mixer.Info>emptyList(), input, config, panel);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the session's I/O loop on a thread from {@code threads}.
+     *
+     * @throws IllegalStateException if the session was started before
+     */
+    public synchronized void start(ThreadFactory threads) {
+        if (state != State.NEW) {
+            throw new IllegalStateException("Session already started");
+        }
+        setState(!audioFiles.isEmpty() ? State.PREPROCESSING : State.RUNNING);
+        threads.newThread(this::run).start();
+    }
+
+    private void run() {
+        try {
+            if (!audioFiles.isEmpty()) {
+                processor.preprocessAudio(audioFiles);
+                if (!processor.isStopped()) {
+                    setState(State.RUNNING);
+                    processor.processAudio(audioFiles);
+                }
+            } else if (pcmInput != null) {
+                processor.processPcmInput(pcmInput);
+            } else {
+                processor.processLiveAudio(inputs);
+            }
+            setState(processor.isStopped() ? State.STOPPED : State.FINISHED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            setState(State.STOPPED);
+        } catch (Exception e) {
+            failure = e;
+            setState(State.FAILED);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        Listener current = listener;
+        if (current != null) {
+            current.stateChanged(this, newState);
+        }
+    }
+
+    /**
+     * Asks the session to end after the current chunk. Returns immediately.
+     */
+    public void stop() {
+        processor.stop();
+    }
+
+    /**
+     * Waits until the session has ended and released its resources.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The exception that ended the session if it is {@link State#FAILED}, otherwise {@code null}.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public SessionConfig getConfig() {
+        return config;
+    }
+
+    public VisualizerPanel getPanel() {
+        return panel;
+    }
+
+    /**
+     * The session's processor, e.g. to enable metrics or set a progress listener before start.
+     */
+    public AudioProcessor getProcessor() {
+        return processor;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Analysis windows for the short-time Fourier transform.
+ */
+public enum WindowFunction {
+    RECTANGULAR,
+    HANN,
+    HAMMING,
+    BLACKMAN_HARRIS;
+
+    /**
+     * Periodic window coefficients of length {@code n}.
+     */
+    public double[] coefficients(int n) {
+        double[] w = new double[n];
+        for (int i = 0; i < n; i++) {
+            double x = 2 * Math.PI * i / n;
+            switch (this) {
+                case HANN:
+                    w[i] = 0.5 - 0.5 * Math.cos(x);
+                    break;
+                case HAMMING:
+                    w[i] = 0.54 - 0.46 * Math.cos(x);
+                    break;
+                case BLACKMAN_HARRIS:
+                    w[i] = 0.35875 - 0.48829 * Math.cos(x) + 0.14128 * Math.cos(2 * x)
+                            - 0.01168 * Math.cos(3 * x);
+                    break;
+                default:
+                    w[i] = 1;
+                    break;
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Coefficients of length {@code n} scaled by the window's coherent gain, so a sinusoid reads
+     * the same level whichever window is used.
+     */
+    public double[] normalizedCoefficients(int n) {
+        double[] w = coefficients(n);
+        double sum = 0;
+        for (double c : w) {
+            sum += c;
+        }
+        double gain = n / sum;
+        for (int i = 0; i < n; i++) {
+            w[i] *= gain;
+        }
+        return w;
+    }
+}
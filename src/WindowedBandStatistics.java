@@ -0,0 +1,52 @@
+/**
+ * {@link BandStatistics} over a sliding window of recent frames, for live input whose level
+ * drifts over a session. Two estimators are fed in parallel, staggered by half a window: every
+ * {@code window / 2} frames the older one is reset and becomes the newer one. Estimates come from
+ * the older one, so they always reflect between half a window and a whole window of the most
+ * recent frames and anything before that is forgotten. Not thread-safe: feed it from a single
+ * thread.
+ */
+public class WindowedBandStatistics {
+
+    private final BandStatistics[] halves = new BandStatistics[2];
+    private final int halfWindow;
+    private int older;
+    private int framesSinceSwap;
+
+    /**
+     * @param window frames an estimate covers at most; at least 2
+     */
+    public WindowedBandStatistics(int numBands, int window, double... quantiles) {
+        if (window < 2) {
+            throw new IllegalArgumentException("Window must be at least 2 frames: " + window);
+        }
+        this.halfWindow = window / 2;
+        halves[0] = new BandStatistics(numBands, quantiles);
+        halves[1] = new BandStatistics(numBands, quantiles);
+    }
+
+    public void add(double[] volumes) {
+        halves[0].add(volumes);
+        halves[1].add(volumes);
+        if (++framesSinceSwap == halfWindow) {
+            halves[older].reset();
+            older = 1 - older;
+            framesSinceSwap = 0;
+        }
+    }
+
+    /**
+     * Estimate of the {@code quantileIndex}-th configured quantile for {@code band} over the
+     * recent frames.
+     */
+    public double getQuantile(int band, int quantileIndex) {
+        return halves[older].getQuantile(band, quantileIndex);
+    }
+
+    /**
+     * Frames the current estimates are based on.
+     */
+    public long getCount() {
+        return halves[older].getCount();
+    }
+}